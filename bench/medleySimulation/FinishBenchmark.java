@@ -0,0 +1,50 @@
+//JMH benchmark for many swimmers finishing at once.
+//Each measurement is a burst of finishRace calls from every thread on a fresh FinishCounter.
+//Run with: mvn -Pbench package && java -jar target/benchmarks.jar FinishBenchmark
+package medleySimulation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = FinishBenchmark.finishers)
+@Measurement(iterations = 10, batchSize = FinishBenchmark.finishers)
+@Fork(1)
+public class FinishBenchmark {
+	
+	static final int finishers = 10000; //finishRace calls per thread per iteration
+	static final int maxThreads = 64;
+	
+	@State(Scope.Benchmark)
+	public static class Line {
+		FinishCounter finish;
+		final AtomicInteger nextTeam = new AtomicInteger();
+		
+		@Setup(Level.Iteration)
+		public void setup() {
+			finish = new FinishCounter(RaceClock.WALL, finishers * maxThreads, 1); //room for every finisher
+			nextTeam.set(0);
+		}
+	}
+	
+	@Benchmark
+	@Threads(8)
+	public void simultaneousFinishers(Line line) {
+		int team = line.nextTeam.getAndIncrement();
+		line.finish.finishRace(team, team);
+	}
+}
@@ -0,0 +1,102 @@
+//JMH benchmarks for movement and block acquisition on the grid.
+//Run with: mvn -Pbench package && java -jar target/benchmarks.jar GridBenchmark
+package medleySimulation;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+	
+	//one stadium shared by all benchmark threads
+	@State(Scope.Benchmark)
+	public static class Stadium {
+		@Param({"objects", "compact"})
+		public String grid;
+		
+		StadiumGrid stadium;
+		final AtomicInteger nextID = new AtomicInteger(); //hands each thread its own person ID
+		
+		@Setup
+		public void setup() throws InterruptedException {
+			SimulationConfig config = new SimulationConfig();
+			config.set("grid", grid);
+			config.validate();
+			stadium = new StadiumGrid(config, RaceClock.WALL);
+		}
+	}
+	
+	//a person per benchmark thread
+	@State(Scope.Thread)
+	public static class Person {
+		PeopleLocation location;
+		GridBlock current;
+		int lane; //own column, so moves never meet
+		boolean up; //direction of the next move
+		
+		@Setup
+		public void setup(Stadium s) {
+			int id = s.nextID.getAndIncrement();
+			location = new PeopleLocation(id, Color.red);
+			lane = id % s.stadium.getMaxX();
+		}
+		
+		@TearDown(Level.Iteration)
+		public void leave() {
+			if (current != null) current.release();
+			current = null;
+		}
+	}
+	
+	//one person moving up and down their own column - no-one else touches it
+	@Benchmark
+	@Threads(1)
+	public GridBlock uncontendedMove(Stadium s, Person p) throws InterruptedException {
+		if (p.current == null) {
+			p.current = s.stadium.whichBlock(p.lane, 10);
+			p.current.acquire(p.location.getID());
+		}
+		p.up = !p.up;
+		p.current = s.stadium.moveTowards(p.current, p.lane, p.up ? 0 : s.stadium.getMaxY(), p.location);
+		return p.current;
+	}
+	
+	//every thread takes and releases the same block
+	@Benchmark
+	@Threads(4)
+	public void oneBlockContended(Stadium s, Person p) throws InterruptedException {
+		GridBlock b = s.stadium.whichBlock(3, 3);
+		b.acquire(p.location.getID());
+		b.release();
+	}
+	
+	//the entrance hot spot: come in through the entrance and step straight off it
+	@Benchmark
+	@Threads(4)
+	public GridBlock entranceHotSpot(Stadium s, Person p) throws InterruptedException {
+		GridBlock in = s.stadium.enterStadium(p.location);
+		GridBlock step = s.stadium.jumpTo(in, 1 + p.location.getID() % 3, in.getY() - 1 - p.location.getID() / 3 % 3, p.location);
+		step.release();
+		return step;
+	}
+}
@@ -0,0 +1,110 @@
+//Class for debug and warning messages from the swimmer threads.
+//A message goes on a bounded lock-free queue and a background thread prints it, so a swimmer
+//never waits on the output stream's lock. If the queue is full the message is dropped and counted.
+//The writer sleeps while there is nothing to print, and the first message to find it asleep wakes it.
+package medleySimulation;
+
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class AsyncLog {
+	
+	public enum Level { DEBUG, INFO, WARN, ERROR, OFF;
+		
+		static Level parse(String s) {
+			try {
+				return valueOf(s.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("logLevel must be debug, info, warn, error or off");
+			}
+		}
+	}
+	
+	public static final AsyncLog OUT = new AsyncLog(System.out, 8192, Level.INFO); //shared log to standard output
+	
+	private final PrintStream out;
+	private final int capacity; //most messages waiting to be printed
+	private volatile Level level; //messages below this are not even queued
+	private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger queued = new AtomicInteger(); //messages on the queue
+	private final LongAdder dropped = new LongAdder(); //messages lost because the queue was full
+	private final Object writing = new Object(); //held while printing, so flushes keep messages in order
+	private long droppedReported; //drops already mentioned in the output - under writing
+	private final Thread writer;
+	private volatile boolean idle; //writer is parked, or about to park, on an empty queue
+	
+	AsyncLog(PrintStream out, int capacity, Level level) {
+		this.out=out;
+		this.capacity=capacity;
+		this.level=level;
+		writer = new Thread(this::writeLoop, "log writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::drain)); //print what is left at exit
+	}
+	
+	public void setLevel(Level level) { this.level = level; }
+	
+	public Level getLevel() { return level; }
+	
+	//is a message at this level printed? - check before building an expensive message
+	public boolean enabled(Level l) {
+		return l.compareTo(level) >= 0 && l != Level.OFF;
+	}
+	
+	//queue a message - never blocks
+	public void log(Level l, String message) {
+		if (!enabled(l)) return;
+		if (queued.incrementAndGet() > capacity) { //full - drop it
+			queued.decrementAndGet();
+			dropped.increment();
+			return;
+		}
+		queue.add(l.name() + " " + message);
+		if (idle) LockSupport.unpark(writer);
+	}
+	
+	public void debug(String message) { log(Level.DEBUG, message); }
+	
+	public void info(String message) { log(Level.INFO, message); }
+	
+	public void warn(String message) { log(Level.WARN, message); }
+	
+	public void error(String message) { log(Level.ERROR, message); }
+	
+	public long getDropped() { return dropped.sum(); }
+	
+	//print everything queued so far
+	public void drain() {
+		synchronized (writing) {
+			String m;
+			boolean any = false;
+			while ((m = queue.poll()) != null) {
+				queued.decrementAndGet();
+				out.println(m);
+				any = true;
+			}
+			long d = dropped.sum();
+			if (d > droppedReported) {
+				out.println("WARN " + (d - droppedReported) + " log messages dropped");
+				droppedReported = d;
+				any = true;
+			}
+			if (any) out.flush();
+		}
+	}
+	
+	//background writer - parks until a message arrives
+	//idle is set before the queue is checked, and log adds before it reads idle, so a message is never left unprinted
+	private void writeLoop() {
+		while (true) {
+			drain();
+			idle = true;
+			if (queue.isEmpty()) LockSupport.park(this);
+			idle = false;
+		}
+	}
+}
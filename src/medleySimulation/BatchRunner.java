@@ -0,0 +1,184 @@
+//Class to run a large batch of headless races in parallel and report who wins.
+//Independent races share nothing, so they run on a fork-join pool: the batch is split in halves
+//until each piece is a few races, and each piece's tally is merged on the way back up.
+package medleySimulation;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class BatchRunner {
+	
+	private final SimulationConfig config;
+	private final int races;
+	private final int workers;
+	private final int numTeams;
+	private final int grain; //races run one after another by a single task
+	private PrintStream results; //where to export every race's ledger, if anywhere
+	private RaceTally tally; //results of the last run
+	
+	BatchRunner(SimulationConfig config) {
+		this.config=config;
+		this.races=config.races;
+		this.workers=config.workers;
+		this.numTeams=config.numTeams;
+		grain = Math.max(1, races / (workers*8)); //enough pieces for idle workers to steal
+	}
+	
+	//export the full results of every race as CSV
+	public void exportTo(PrintStream out) {
+		results = out;
+		ResultsLedger.writeCsvHeader(out);
+	}
+	
+	//races [from, to), split until small enough to run
+	private class Races extends RecursiveTask<RaceTally> {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+		
+		Races(int from, int to) {
+			this.from=from;
+			this.to=to;
+		}
+		
+		protected RaceTally compute() {
+			if (to - from > grain) {
+				int mid = (from + to) >>> 1;
+				Races left = new Races(from, mid);
+				left.fork();
+				RaceTally right = new Races(mid, to).compute();
+				return right.merge(left.join());
+			}
+			RaceTally t = new RaceTally(numTeams, config.teamSize);
+			try {
+				for (int r = from; r < to; r++) runRace(r, t);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("batch interrupted", e);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return t;
+		}
+	}
+	
+	//run one race and add it to a tally
+	private void runRace(int r, RaceTally t) throws InterruptedException, IOException {
+		if (config.tickEngine) {
+			runTickRace(r, t);
+			return;
+		}
+		HeadlessRace race = new HeadlessRace(config, r);
+		RaceLog log = (r == 0 && config.log != null) ? new RaceLog() : null;
+		if (log != null) race.setLog(log);
+		RaceTrace trace = (r == 0 && config.trace != null) ? new RaceTrace(config.traceBuffer, config.numTeams * config.teamSize) : null;
+		if (trace != null) race.setTrace(trace);
+		int winner = race.run();
+		if (results != null) {
+			synchronized (results) { race.getLedger().writeCsv(results, r); }
+		}
+		t.add(race, winner);
+		if (log != null) writeLog(log);
+		if (trace != null) writeTrace(trace);
+	}
+	
+	//run one race on this worker thread alone
+	private void runTickRace(int r, RaceTally t) throws IOException {
+		TickRace race = new TickRace(config, r);
+		RaceLog log = (r == 0 && config.log != null) ? new RaceLog() : null;
+		if (log != null) {
+			config.describe(log);
+			race.setLog(log);
+		}
+		int winner = race.run();
+		if (results != null) {
+			synchronized (results) { race.getLedger().writeCsv(results, r); }
+		}
+		t.add(race.getLedger(), winner, race.getRaceTime(), race.hasStalled(), 0); //handoffs take no time
+		if (log != null) writeLog(log);
+	}
+	
+	//run all the races - returns the wall-clock time taken in milliseconds
+	public long run() throws InterruptedException {
+		//a race blocks its worker until it ends - no spare threads, so only workers races run at once
+		ForkJoinPool pool = new ForkJoinPool(workers, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false,
+				workers, workers, 0, p -> true, 60, TimeUnit.SECONDS);
+		long start = System.nanoTime();
+		try {
+			tally = pool.invoke(new Races(0, races));
+		} finally {
+			pool.shutdownNow();
+		}
+		return (System.nanoTime() - start) / 1000000L;
+	}
+	
+	public RaceTally getTally() { return tally; }
+	
+	//save the first race's moves for replay
+	private void writeLog(RaceLog log) throws IOException {
+		try (PrintStream out = new PrintStream(new FileOutputStream(config.log), false)) {
+			log.write(out);
+		}
+		System.out.println("race 0: " + log.size() + " moves logged to " + config.log + ", checksum " + Long.toHexString(log.checksum()));
+	}
+	
+	//save the first race's trace for TraceReader
+	private void writeTrace(RaceTrace trace) throws IOException {
+		long n = trace.write(config.trace);
+		System.out.println("race 0: " + n + " events traced to " + config.trace + ", " + trace.getDropped() + " dropped");
+	}
+	
+	//print throughput, win probabilities and split times
+	public void report(long elapsed) {
+		System.out.println(races + " races on " + workers + " workers, " + (config.tickEngine ? "tick engine" : config.threadMode.effective() + " threads") + ", in " + elapsed + " ms ("
+				+ String.format("%.1f", races * 1000.0 / Math.max(1, elapsed)) + " races/s)");
+		System.out.println("mean simulated race time: " + tally.getMeanRaceTime() + " ms");
+		System.out.println("mean relay handoff latency: " + tally.getMeanHandoffNanos() / 1000 + " us");
+		if (!config.tickEngine && config.deckRoutes) System.out.println("mean deck detours per race: " + String.format("%.1f", tally.getMeanDetours()));
+		System.out.println("team\twins\tP(win)\t95% interval");
+		for (int t = 0; t < numTeams; t++) {
+			double [] ci = tally.winInterval(t);
+			System.out.println("team " + t + "\t" + tally.getWins(t) + "\t" + String.format("%.2f%%\t%.2f%% - %.2f%%", 100 * tally.winProbability(t), 100 * ci[0], 100 * ci[1]));
+		}
+		System.out.println("stroke\t\tlegs\tmean split (ms)");
+		for (SwimStroke s : SwimStroke.values()) {
+			if (tally.getSplits(s) == 0) continue;
+			System.out.println(String.format("%-12s\t%d\t%.0f +/- %.0f", s.name(), tally.getSplits(s), tally.meanSplit(s), tally.splitMargin(s)));
+		}
+		System.out.println("first legs on the blocks at " + String.format("%.0f", tally.getMeanFirstDive()) + " ms on average, "
+				+ tally.getLateTakeovers() + " of " + tally.getTakeovers() + " takeovers late" + (tally.getLateTakeovers() > 0 ? String.format(" by %.0f ms on average", tally.getMeanLateness()) : ""));
+		if (config.spectators > 0 || config.gates > 1) {
+			System.out.println(config.spectators + " spectators a race");
+			System.out.println("gate\tarrived/s\tadmitted/s\tmean queue (ms)\tlongest queue");
+			for (int g = 0; g < tally.getGates(); g++) {
+				System.out.println("gate " + g + "\t" + String.format("%.2f\t\t%.2f\t\t%.0f\t\t", tally.gateArrivalRate(g), tally.gateAdmissionRate(g), tally.meanGateWait(g)) + tally.getLongestQueue(g));
+			}
+		}
+		System.out.println("no winner: " + tally.getNoWinner() + ", stalled: " + tally.getStalls() + (config.tickEngine ? "" : ", deadlocks broken: " + tally.getDeadlocksBroken()));
+	}
+	
+	//run the batch the settings describe and print the report
+	public static void runBatch(SimulationConfig config) throws InterruptedException, IOException {
+		AsyncLog.OUT.setLevel(config.logLevel);
+		RaceMetrics metrics = config.installMetrics();
+		BatchRunner batch = new BatchRunner(config);
+		PrintStream out = config.results != null ? new PrintStream(new FileOutputStream(config.results), false) : null;
+		if (out != null) batch.exportTo(out);
+		long elapsed = batch.run();
+		AsyncLog.OUT.drain(); //swimmer messages before the report
+		batch.report(elapsed);
+		if (metrics != null) metrics.stop();
+		if (out != null) out.close();
+	}
+	
+	// usage: BatchRunner [--config=file] [--races=n] [--workers=n] [--threads=platform|virtual] [--results=file.csv] ...
+	public static void main(String[] args) throws InterruptedException, IOException {
+		runBatch(SimulationConfig.load(args));
+	}
+}
@@ -0,0 +1,189 @@
+//Class for a compact grid: who owns each block is kept in flat int arrays
+//instead of a GridBlock object per block, so a block costs 4 bytes.
+//The arrays are split by GridRegions - one per lane's water, one per lane's deck and one for
+//the entrance - each with its own wait queues and counters, so swimmers in different lanes
+//never write to the same memory. Moving between regions needs nothing extra: the new block
+//is taken in its region before the old one is freed in its own.
+//GridBlocks are handed out as small views onto the arrays when needed, and
+//two views of the same block are equal. Finding a block is index arithmetic.
+package medleySimulation;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CompactGrid {
+	
+	//each word: low 24 bits owner ID+1 (0 means free), high 8 bits a wrapping version stamp
+	private static final int ownerBits = 0xffffff;
+	static final int maxOwners = ownerBits - 1; //IDs must fit in 24 bits
+	private static final int pad = 16; //unused ints either side of a region's blocks, so regions never share a cache line
+	
+	private final int x; //maximum x value
+	private final int y; //maximum y value
+	private final int startY; //row of the starting blocks
+	private final int laneWidth; //starting block every laneWidth columns
+	private final int poolX; //starting blocks only below this column - the stands are beyond
+	private final GridRegions layout;
+	private final Region [] regions;
+	
+	//one region's blocks, wait queues and contention counters
+	private static final class Region {
+		final AtomicIntegerArray owners; //indexed by pad + index in the region
+		//parked threads, only for blocks someone has waited on - queues are kept so a releaser always finds them
+		final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<GridBlock.Waiter>> waiters = new ConcurrentHashMap<>();
+		final LongAdder acquires = new LongAdder();
+		final LongAdder failedAttempts = new LongAdder();
+		final LongAdder retries = new LongAdder();
+		
+		Region(int size) {
+			owners = new AtomicIntegerArray(size + 2*pad);
+		}
+	}
+	
+	CompactGrid(int x, int y, int startY, int laneWidth, int entranceX, int entranceY) {
+		this(x, y, startY, laneWidth, x, entranceX, entranceY);
+	}
+	
+	CompactGrid(int x, int y, int startY, int laneWidth, int poolX, int entranceX, int entranceY) {
+		if ((long) x*y > Integer.MAX_VALUE) throw new IllegalArgumentException("grid too large: " + x + "x" + y);
+		this.x=x;
+		this.y=y;
+		this.startY=startY;
+		this.laneWidth=laneWidth;
+		this.poolX=poolX;
+		layout = new GridRegions(x, y, startY, laneWidth, entranceX, entranceY);
+		regions = new Region[layout.count()];
+		for (int r = 0; r < regions.length; r++) regions[r] = new Region(layout.size(r));
+	}
+	
+	//a view of block (i,j) - the caller checks it is in the grid
+	public GridBlock block(int i, int j) {
+		int r = layout.regionOf(i, j);
+		return new Cell(i, j, regions[r], pad + layout.indexIn(r, i, j));
+	}
+	
+	public long getAcquires() {
+		long n = 0;
+		for (Region r : regions) n += r.acquires.sum();
+		return n;
+	}
+	
+	public long getFailedAttempts() {
+		long n = 0;
+		for (Region r : regions) n += r.failedAttempts.sum();
+		return n;
+	}
+	
+	public long getRetries() {
+		long n = 0;
+		for (Region r : regions) n += r.retries.sum();
+		return n;
+	}
+	
+	//print the most contended regions, busiest first
+	public void dumpRegions(PrintStream out, int top) {
+		List<Integer> busy = new ArrayList<Integer>();
+		for (int r = 0; r < regions.length; r++) if (regions[r].acquires.sum()>0) busy.add(r);
+		busy.sort((a,b) -> Long.compare(regions[b].failedAttempts.sum()+regions[b].retries.sum(), regions[a].failedAttempts.sum()+regions[a].retries.sum()));
+		out.println("region\tacquires\tfailed\tretries");
+		for (int k = 0; k < Math.min(top, busy.size()); k++) {
+			Region r = regions[busy.get(k)];
+			out.println(layout.name(busy.get(k))+"\t"+r.acquires.sum()+"\t"+r.failedAttempts.sum()+"\t"+r.retries.sum());
+		}
+	}
+	
+	//bytes used by the occupancy arrays
+	public long footprint() {
+		long n = 0;
+		for (Region r : regions) n += 4L * r.owners.length();
+		return n;
+	}
+	
+	//a block in the compact grid: ownership lives in its region's array
+	private final class Cell extends GridBlock {
+		private final Region region;
+		private final AtomicIntegerArray owners; //the region's
+		private final int index; //in the region's array
+		
+		Cell(int i, int j, Region region, int index) {
+			super(i, j, (i%laneWidth==1)&&(j==startY)&&(i<poolX), false);
+			this.region=region;
+			this.owners=region.owners;
+			this.index=index;
+		}
+		
+		@Override
+		public boolean get(int threadID) {
+			if (threadID<0 || threadID>=maxOwners) throw new IllegalArgumentException("ID out of range for a compact grid: " + threadID);
+			while (true) {
+				int s = owners.get(index);
+				int owner = (s & ownerBits) - 1;
+				if (owner==threadID) return true; //already in this block
+				if (owner>=0) {
+					region.failedAttempts.increment();
+					return false;
+				}
+				if (owners.compareAndSet(index, s, stamp(s, threadID))) {
+					region.acquires.increment();
+					return true;
+				}
+				region.retries.increment();
+			}
+		}
+		
+		@Override
+		protected boolean free() {
+			int s;
+			do {
+				s = owners.get(index);
+				if ((s & ownerBits)==0) return false;
+			} while (!owners.compareAndSet(index, s, stamp(s, -1)));
+			return true;
+		}
+		
+		private int stamp(int s, int owner) {
+			return (((s>>>24)+1)<<24) | (owner+1);
+		}
+		
+		@Override
+		protected ConcurrentLinkedQueue<GridBlock.Waiter> waitQueue(boolean create) {
+			if (!create) return region.waiters.get(index);
+			return region.waiters.computeIfAbsent(index, k -> new ConcurrentLinkedQueue<GridBlock.Waiter>());
+		}
+		
+		@Override
+		public int owner() {
+			return (owners.get(index) & ownerBits) - 1;
+		}
+		
+		@Override
+		public int version() {
+			return owners.get(index)>>>24;
+		}
+		
+		//per-block counters are not kept
+		@Override
+		public long getAcquires() { return 0; }
+		
+		@Override
+		public long getFailedAttempts() { return 0; }
+		
+		@Override
+		public long getRetries() { return 0; }
+		
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof Cell) && ((Cell) o).index==index && ((Cell) o).region==region;
+		}
+		
+		@Override
+		public int hashCode() {
+			return getX()*y + getY();
+		}
+	}
+}
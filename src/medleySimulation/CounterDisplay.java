@@ -1,33 +1,29 @@
 //M. M. Kuttel 2024 mkuttel@gmail.com
-// Simple Thread class to update the display of a text field
+// Simple class to update the display of a text field when the race is won
 package medleySimulation;
 
 import java.awt.Color;
 
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 
-//You don't need to change this class
-public class CounterDisplay  implements Runnable {
+public class CounterDisplay  implements FinishListener {
 	
-	private FinishCounter results;
 	private JLabel win;
 		
 	CounterDisplay(JLabel w, FinishCounter score) {
         this.win=w;
-        this.results=score;
+        win.setForeground(Color.BLACK);
+        win.setText("------");
+        score.addFinishListener(this);
     }
 	
-	public void run() { //this thread just updates the display of a text field
-        while (true) {
-        	//test changes colour when the race is won
-        	if (results.isRaceWon()) {
-        		win.setForeground(Color.RED);
-               	win.setText("Winning Team: " + results.getWinningTeam() + "!!"); 
-        	}
-        	else {
-        		win.setForeground(Color.BLACK);
-        		win.setText("------"); 
-        	}	
-        }
+	public void teamFinished(FinishEvent e) { //only the winner changes the display
+		if (!e.isWin()) return;
+		SwingUtilities.invokeLater(() -> {
+			//text changes colour when the race is won
+			win.setForeground(Color.RED);
+			win.setText("Winning Team: " + e.getWinningTeam() + "!!"); 
+		});
     }
 }
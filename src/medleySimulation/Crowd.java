@@ -0,0 +1,42 @@
+//Class for the crowd at a race: the spectators, each on a thread of its own like a swimmer.
+//Spectator IDs follow the swimmers', and seats are handed out in ID order, nearest the concourse first.
+package medleySimulation;
+
+import java.awt.Color;
+import java.util.Random;
+
+public class Crowd {
+
+	static final Color colour = new Color(150, 150, 150);
+
+	private final ThreadMode mode;
+	private final Spectator [] spectators;
+	private final Thread [] threads;
+
+	//spectators with IDs from firstID, their locations stored in locArr at those IDs
+	Crowd(int firstID, int size, StadiumGrid stadium, PeopleLocation [] locArr, ThreadMode mode, int arrivalMillis, int visitMillis, Random rand) {
+		this.mode=mode;
+		spectators = new Spectator[size];
+		threads = new Thread[size];
+		for (int s = 0; s < size; s++) {
+			int id = firstID+s;
+			locArr[id] = new PeopleLocation(id, colour);
+			spectators[s] = new Spectator(id, s, stadium, locArr[id], arrivalMillis, visitMillis, new Random(rand.nextLong()));
+		}
+	}
+
+	public void start() {
+		for (int s = 0; s < spectators.length; s++) threads[s] = mode.start(spectators[s], "spectator-"+spectators[s].getID());
+	}
+
+	//stop everyone, e.g. when a race has stalled
+	public void stop() {
+		for (Thread t : threads) if (t!=null) t.interrupt();
+	}
+
+	public void join() throws InterruptedException {
+		for (Thread t : threads) if (t!=null) t.join();
+	}
+
+	public int size() { return spectators.length; }
+}
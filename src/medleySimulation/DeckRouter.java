@@ -0,0 +1,114 @@
+//Class holding route tables for walking on the deck, from anywhere on it to a starting block or bench.
+//A table is built once per destination by a breadth-first search back from it, and gives
+//every deck block its distance. The next hop is a neighbour one step closer; when there are
+//two, a swimmer can step round an occupied block instead of queueing behind it.
+//Routes keep out of other lanes' starting blocks, and only go up or down the exit column
+//(next to a starting block) to reach a bench in it, so walkers and leavers never meet head on.
+//Tables depend only on the deck's layout, so grids with the same layout share one router - the
+//races of a batch build each table once between them.
+package medleySimulation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class DeckRouter {
+
+	private static final ConcurrentHashMap<List<Integer>, DeckRouter> shared = new ConcurrentHashMap<List<Integer>, DeckRouter>(); //by layout
+
+	private final int x; //maximum x value
+	private final int y; //maximum y value
+	private final int top; //first deck row - the starting blocks
+	private final int laneWidth;
+	private final ConcurrentHashMap<Integer, short[]> tables = new ConcurrentHashMap<Integer, short[]>(); //per destination's index, distance from each deck block
+
+	//can a deck this size have route tables? blocks are indexed by an int, and a route is at most
+	//across and down the deck plus a step round an exit column, which must fit in a short
+	static boolean fits(int x, int y, int startY) {
+		return (long) x*(y-startY) <= Integer.MAX_VALUE && (long) x+(y-startY)+2 < Short.MAX_VALUE;
+	}
+	
+	//the router for a deck of this layout, shared by every grid that has it
+	static DeckRouter forDeck(int x, int y, int startY, int laneWidth) {
+		return shared.computeIfAbsent(Arrays.asList(x, y, startY, laneWidth), k -> new DeckRouter(x, y, startY, laneWidth));
+	}
+	
+	DeckRouter(int x, int y, int startY, int laneWidth) {
+		if (!fits(x, y, startY)) throw new IllegalArgumentException("deck too large for route tables: " + x + "x" + (y-startY));
+		this.x=x;
+		this.y=y;
+		this.top=startY;
+		this.laneWidth=laneWidth;
+	}
+
+	private boolean onDeck(int i, int j) {
+		return i>=0 && i<x && j>=top && j<y;
+	}
+
+	private int index(int i, int j) { return i*(y-top) + (j-top); }
+	
+	//the block a hop from nextHop leads to
+	public int hopX(int hop) { return hop/(y-top); }
+	
+	public int hopY(int hop) { return top + hop%(y-top); }
+
+	private boolean isStartBlock(int i, int j) { return j==top && i%laneWidth==1; }
+
+	private boolean isExitColumn(int i) { return i%laneWidth==2; }
+
+	//can a swimmer heading for (dx,dy) step between these neighbouring blocks?
+	private boolean allowed(int fromX, int fromY, int toX, int toY, int dx, int dy) {
+		if (!onDeck(toX, toY)) return false;
+		if (isStartBlock(toX, toY) && !(toX==dx && toY==dy)) return false; //another lane's block
+		if (fromX==toX && isExitColumn(toX) && toX!=dx) return false; //leavers use that column
+		return true;
+	}
+
+	//distances to a destination from every deck block, -1 if it cannot be reached
+	private short [] table(int dx, int dy) {
+		return tables.computeIfAbsent(index(dx,dy), k -> {
+			short [] dist = new short[x*(y-top)];
+			Arrays.fill(dist, (short) -1);
+			int [] queue = new int[dist.length];
+			int head = 0, tail = 0;
+			dist[k] = 0;
+			queue[tail++] = k;
+			int [][] steps = {{1,0},{-1,0},{0,1},{0,-1}};
+			while (head<tail) {
+				int c = queue[head++];
+				int ci = hopX(c), cj = hopY(c);
+				for (int [] s : steps) {
+					int ni = ci+s[0], nj = cj+s[1];
+					//searching backwards: the swimmer would step from (ni,nj) to (ci,cj)
+					if (!onDeck(ni, nj) || dist[index(ni,nj)]>=0 || !allowed(ni, nj, ci, cj, dx, dy)) continue;
+					if (isStartBlock(ni, nj)) continue; //nobody routes through another lane's block
+					dist[index(ni,nj)] = (short) (dist[c]+1);
+					queue[tail++] = index(ni,nj);
+				}
+			}
+			return dist;
+		});
+	}
+
+	//best next block from (i,j) towards (dx,dy), as an index for hopX and hopY, or -1 if (i,j) is off the deck or there is no route
+	//the first choice is sideways before up or down, like StadiumGrid.moveTowards - second picks the other way
+	public int nextHop(int i, int j, int dx, int dy, boolean second) {
+		if (!onDeck(i,j) || !onDeck(dx,dy)) return -1;
+		short [] dist = table(dx, dy);
+		int d = dist[index(i,j)];
+		if (d<=0) return -1; //there already, or cut off
+		int sx = Integer.signum(dx-i), sy = Integer.signum(dy-j);
+		int found = 0;
+		int [][] order = {{sx,0},{0,sy},{-sx,0},{0,-sy}}; //towards the destination first
+		for (int [] s : order) {
+			if (s[0]==0 && s[1]==0) continue;
+			int ni = i+s[0], nj = j+s[1];
+			if (!onDeck(ni,nj) || dist[index(ni,nj)]!=d-1 || !allowed(i, j, ni, nj, dx, dy)) continue;
+			if (found++==(second ? 1 : 0)) return index(ni,nj);
+		}
+		return -1;
+	}
+
+	//route tables built so far, by every grid sharing this router
+	public int getTables() { return tables.size(); }
+}
@@ -0,0 +1,192 @@
+//Class for a simulated clock that also decides who runs, so that a seeded race
+//comes out exactly the same every time.
+//Only one swimmer thread runs at once. When it sleeps or blocks, the runnable swimmer
+//with the lowest ID goes next; when nobody can run, time jumps to the next wake-up.
+//Contention for a block is then settled by this order, not by the operating system.
+package medleySimulation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+public class DeterministicClock extends RaceClock {
+	
+	private static final int nobody = -1;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition ended = lock.newCondition(); //signalled when the race ends or stalls
+	
+	private final Map<Thread, Integer> ids = new HashMap<Thread, Integer>(); //swimmer thread to ID
+	private final Map<Integer, Condition> turns = new HashMap<Integer, Condition>(); //signalled when it is that swimmer's turn
+	private final TreeSet<Integer> runnable = new TreeSet<Integer>(); //waiting for their turn now
+	private final PriorityQueue<long[]> sleepers = new PriorityQueue<long[]>( //{wake time, ID}
+			(a,b) -> a[0]!=b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+	private long now; //simulated milliseconds
+	private int running = nobody; //the one swimmer allowed to run
+	private int participants; //swimmer threads still in the race
+	private int pending; //joined or woken swimmers that have not yet asked for a turn
+	private boolean stalled; //everyone is blocked and no-one is asleep
+	private BooleanSupplier stallHandler; //gets a chance to free someone before the race is given up
+	
+	@Override
+	public long now() {
+		lock.lock();
+		try { return now; } finally { lock.unlock(); }
+	}
+	
+	@Override
+	public void join() {
+		lock.lock();
+		try {
+			participants++;
+			pending++; //will call begin()
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void begin(int id) throws InterruptedException {
+		lock.lock();
+		try {
+			ids.put(Thread.currentThread(), id);
+			turns.put(id, lock.newCondition());
+			pending--;
+			awaitTurn(id);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void sleep(long millis) throws InterruptedException {
+		lock.lock();
+		try {
+			if (stalled) throw new InterruptedException("race stalled");
+			int id = myID();
+			sleepers.add(new long[] {now+millis, id});
+			giveUp();
+			while (running!=id && !stalled) turns.get(id).await(); //woken straight into running by schedule()
+			if (running!=id) throw new InterruptedException("race stalled");
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void leave() {
+		lock.lock();
+		try {
+			participants--;
+			Integer id = ids.remove(Thread.currentThread());
+			if (id!=null) runnable.remove(id);
+			if (id!=null && running==id) giveUp();
+			if (participants==0) ended.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void idle() {
+		lock.lock();
+		try {
+			if (running==myID()) giveUp();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void busy() {
+		lock.lock();
+		try {
+			pending++; //the woken swimmer will call resume()
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void resume() throws InterruptedException {
+		lock.lock();
+		try {
+			pending--;
+			awaitTurn(myID());
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void setStallHandler(BooleanSupplier handler) {
+		lock.lock();
+		try { stallHandler = handler; } finally { lock.unlock(); }
+	}
+	
+	@Override
+	public boolean awaitEnd() throws InterruptedException {
+		lock.lock();
+		try {
+			while (participants>0 && !stalled) ended.await();
+			return !stalled;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	//called with the lock held
+	private int myID() {
+		Integer id = ids.get(Thread.currentThread());
+		if (id==null) throw new IllegalStateException("not a swimmer in this race: " + Thread.currentThread());
+		return id;
+	}
+	
+	//called with the lock held: queue for a turn and wait for it
+	private void awaitTurn(int id) throws InterruptedException {
+		if (stalled) throw new InterruptedException("race stalled");
+		runnable.add(id);
+		schedule();
+		try {
+			while (running!=id && !stalled) turns.get(id).await();
+		} catch (InterruptedException e) {
+			runnable.remove(id);
+			if (running==id) giveUp();
+			throw e;
+		}
+		if (running!=id) throw new InterruptedException("race stalled");
+	}
+	
+	//called with the lock held: the running swimmer stops
+	private void giveUp() {
+		running = nobody;
+		schedule();
+	}
+	
+	//called with the lock held: pick who runs next, once everyone woken has asked for a turn
+	private void schedule() {
+		if (running!=nobody || pending>0 || participants==0) return;
+		if (runnable.isEmpty()) {
+			if (sleepers.isEmpty()) {
+				if (stallHandler!=null && stallHandler.getAsBoolean()) return; //someone was freed, and will ask for a turn
+				stalled = true;
+				for (Condition c : turns.values()) c.signalAll();
+				ended.signalAll();
+				return;
+			}
+			now = sleepers.peek()[0];
+			while (!sleepers.isEmpty() && sleepers.peek()[0]==now) runnable.add((int) sleepers.poll()[1]);
+		}
+		running = runnable.pollFirst();
+		turns.get(running).signal();
+	}
+	
+	public boolean isStalled() {
+		lock.lock();
+		try { return stalled; } finally { lock.unlock(); }
+	}
+}
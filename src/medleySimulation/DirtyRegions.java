@@ -0,0 +1,53 @@
+//Class to record which grid blocks have changed since the last frame was drawn.
+//Snapshots mark the blocks people have left and entered; the viewer drains the set once per frame.
+package medleySimulation;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class DirtyRegions {
+	
+	private final int maxY;
+	private final AtomicLongArray bits; //one bit per grid block
+	private final AtomicBoolean anyDirty = new AtomicBoolean(); //cheap check for "nothing moved"
+	
+	DirtyRegions(int maxX, int maxY) {
+		this.maxY=maxY;
+		bits = new AtomicLongArray((maxX*maxY+63)/64);
+	}
+	
+	//mark the block at (x,y) as changed
+	public void mark(int x, int y) {
+		int cell = x*maxY + y;
+		long bit = 1L << (cell & 63);
+		int word = cell >>> 6;
+		long old;
+		do {
+			old = bits.get(word);
+			if ((old & bit) != 0) break; //already marked
+		} while (!bits.compareAndSet(word, old, old | bit));
+		anyDirty.lazySet(true);
+	}
+	
+	//hand every changed block (as x,y) to the visitor and clear the set
+	public int drain(CellVisitor visitor) {
+		if (!anyDirty.getAndSet(false)) return 0;
+		int count = 0;
+		for (int w = 0; w < bits.length(); w++) {
+			if (bits.get(w) == 0) continue;
+			long word = bits.getAndSet(w, 0);
+			while (word != 0) {
+				int cell = (w << 6) + Long.numberOfTrailingZeros(word);
+				visitor.visit(cell / maxY, cell % maxY);
+				word &= word - 1;
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	//what to do with each changed block
+	public interface CellVisitor {
+		void visit(int x, int y);
+	}
+}
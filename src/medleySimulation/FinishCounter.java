@@ -1,36 +1,49 @@
 // Simple class to record when someone has crossed the line first and wins
+// Every team's finish goes into the results ledger and is published to the registered listeners
 package medleySimulation;
 
+import java.util.concurrent.CopyOnWriteArrayList;
+
 public class FinishCounter {
-	private boolean firstAcrossLine; //flag
-	private int winner; //who won
-	private int winningTeam; //counter for patrons who have left the club
-	
-	FinishCounter() { 
-		firstAcrossLine= true;//no-one has won at start
-		winner=-1; //no-one has won at start
-		winningTeam=-1; //no-one has won at start
+	private final ResultsLedger ledger; //full results, including split times
+	
+	private final RaceClock clock; //for finish times
+	private final CopyOnWriteArrayList<FinishListener> listeners = new CopyOnWriteArrayList<FinishListener>();
+	
+	FinishCounter(RaceClock clock, int numTeams, int teamSize) { 
+		this.clock=clock;
+		ledger = new ResultsLedger(numTeams, teamSize);
+	}
+	
+	//be told about every team that finishes
+	public void addFinishListener(FinishListener l) {
+		listeners.add(l);
 	}
+	
+	//the race clock
+	public RaceClock getClock() { return clock; }
+	
+	//full results of the race
+	public ResultsLedger getLedger() { return ledger; }
 		
-	//This is called by a swimmer when they touch the fnish line
-	public synchronized void finishRace(int swimmer, int team) {
-		boolean won =false;
-		if(firstAcrossLine) {
-			firstAcrossLine=false;
-			won = true;
-			}
-		if (won) {
-			winner=swimmer;
-			winningTeam=team;
-		}
+	//This is called by a swimmer when they touch the fnish line - finishers never wait on each other
+	public void finishRace(int swimmer, int team) {
+		long time = clock.now();
+		int place = ledger.recordTeamFinish(team, swimmer, time);
+		if (listeners.isEmpty()) return;
+		FinishEvent event = new FinishEvent(swimmer, team, time, ledger.placings(place));
+		for (FinishListener l : listeners) l.teamFinished(event);
 	}
 	
 	//Has race been won?
 	public boolean isRaceWon() {
-		return !firstAcrossLine;
+		return ledger.finished()>0;
 	}
 
-	public int getWinner() { return winner; }
+	public int getWinner() { return isRaceWon() ? ledger.swimmerAtPlace(1) : -1; }
+	
+	public int getWinningTeam() { return isRaceWon() ? ledger.teamAtPlace(1) : -1;}
 	
-	public int getWinningTeam() { return winningTeam;}
+	//teams in the order they have finished so far
+	public int [] getPlacings() { return ledger.placings(ledger.finished()); }
 }
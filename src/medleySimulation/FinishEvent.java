@@ -0,0 +1,35 @@
+// Class describing a team crossing the finish line
+package medleySimulation;
+
+public class FinishEvent {
+	private final int swimmer; //who touched the wall
+	private final int team; //their team
+	private final int place; //1 for the winner
+	private final long time; //race clock milliseconds
+	private final int [] placings; //teams in finishing order, up to and including this one
+	private final int winningTeam;
+	
+	FinishEvent(int swimmer, int team, long time, int [] placings) {
+		this.swimmer=swimmer;
+		this.team=team;
+		this.time=time;
+		this.placings=placings;
+		this.place=placings.length;
+		this.winningTeam=placings[0];
+	}
+	
+	public int getSwimmer() { return swimmer; }
+	
+	public int getTeam() { return team; }
+	
+	public int getPlace() { return place; }
+	
+	public long getTime() { return time; }
+	
+	public int getWinningTeam() { return winningTeam; }
+	
+	public boolean isWin() { return place==1; }
+	
+	//teams in finishing order so far
+	public int [] getPlacings() { return placings.clone(); }
+}
@@ -0,0 +1,7 @@
+// Anything that wants to hear when a team finishes the race
+package medleySimulation;
+
+public interface FinishListener {
+	//called on the finishing swimmer's thread - keep it short
+	void teamFinished(FinishEvent e);
+}
@@ -0,0 +1,98 @@
+//Writes a race from a move log as numbered PNG frames, drawn by StadiumView with no window.
+//Positions are replayed on one thread, a snapshot per frame; the frames are drawn and encoded
+//on all cores. Only a few frames are in flight at once, so memory stays bounded however long the race.
+package medleySimulation;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+public class FrameExporter {
+
+	private final RaceReplay replay; //only for its positions - nothing plays it in real time
+	private final File directory;
+	private final int framesPerSecond; //frames per second of race time
+	private final int width, height;
+	private final int workers;
+	private final Semaphore inFlight; //frames replayed but not yet written
+	private final ThreadLocal<StadiumView> views; //each worker draws with its own view and image
+	private final ThreadLocal<BufferedImage> images;
+	private volatile IOException failure; //first frame that could not be written
+
+	FrameExporter(RaceLog log, File directory, int framesPerSecond, int width, int height, int workers) throws InterruptedException {
+		this.replay = new RaceReplay(log, 0);
+		this.directory=directory;
+		this.framesPerSecond=Math.max(1, framesPerSecond);
+		this.width=width;
+		this.height=height;
+		this.workers=Math.max(1, workers);
+		inFlight = new Semaphore(2*this.workers); //one being drawn and one waiting, per worker
+		views = ThreadLocal.withInitial(() -> new StadiumView(replay.getGrid()));
+		images = ThreadLocal.withInitial(() -> new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+	}
+
+	//write every frame - returns how many
+	public int export() throws InterruptedException, IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("cannot create " + directory);
+		int frames = (int) (replay.getEndTime() * framesPerSecond / 1000) + 1; //the last shows the end of the race
+		PeopleLocation [] people = replay.getPeople();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			int next = 0;
+			for (int f = 0; f < frames && failure == null; f++) {
+				next = replay.playUntil(next, (long) f * 1000 / framesPerSecond);
+				StadiumSnapshot frame = new StadiumSnapshot(people.length);
+				frame.fill(people, f);
+				inFlight.acquire(); //wait for a worker to catch up
+				pool.execute(() -> {
+					try {
+						write(frame);
+					} catch (IOException e) {
+						if (failure == null) failure = e;
+					} finally {
+						inFlight.release();
+					}
+				});
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		if (failure != null) throw failure;
+		return frames;
+	}
+
+	//draw one frame and save it as frame-NNNNN.png
+	private void write(StadiumSnapshot frame) throws IOException {
+		BufferedImage image = images.get();
+		views.get().render(frame, image);
+		File file = new File(directory, String.format("frame-%05d.png", frame.getTick()));
+		if (!ImageIO.write(image, "png", file)) throw new IOException("no PNG writer");
+	}
+
+	// usage: FrameExporter log-file directory [framesPerSecond] [width] [height]
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.err.println("usage: FrameExporter log-file directory [framesPerSecond] [width] [height]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true"); //no window is ever shown
+		RaceLog log = RaceLog.read(args[0]);
+		int fps = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int width = args.length > 3 ? Integer.parseInt(args[3]) : 300; //the animation's default frame
+		int height = args.length > 4 ? Integer.parseInt(args[4]) : 600;
+		int workers = Runtime.getRuntime().availableProcessors();
+		FrameExporter exporter = new FrameExporter(log, new File(args[1]), fps, width, height, workers);
+		long start = System.nanoTime();
+		int frames = exporter.export();
+		long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000L);
+		System.out.println(frames + " frames to " + args[1] + " on " + workers + " threads in " + elapsed + " ms ("
+				+ String.format("%.1f", frames * 1000.0 / elapsed) + " frames/s)");
+	}
+}
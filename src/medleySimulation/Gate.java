@@ -0,0 +1,140 @@
+//Class for one of the stadium's entrances: a block on the concourse that people are let in through one at a time.
+//Whoever arrives first is let in first. Each arrival takes a numbered ticket, as at a deli counter,
+//and only the ticket being served may try for the gate block, so the order is settled once, when
+//the ticket is taken - nobody who turns up later barges past, and someone the watchdog makes back
+//off keeps their place. Each gate counts its arrivals, admissions and the race time people spent queueing.
+package medleySimulation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Gate {
+
+	private final int index; //gate number, 0 is the swimmers' entrance
+	private final GridBlock block;
+	private final ReentrantLock lock = new ReentrantLock();
+	private long nextTicket; //under lock
+	private long serving; //ticket whose holder may take the gate block - under lock
+	private final Map<Long, Condition> waiting = new HashMap<Long, Condition>(); //tickets counted idle on the race clock
+	private final Set<Long> abandoned = new HashSet<Long>(); //tickets of people who gave up, skipped when reached
+	private int longestQueue; //under lock
+	private final LongAdder arrivals = new LongAdder();
+	private final LongAdder admissions = new LongAdder();
+	private final LongAdder waitMillis = new LongAdder(); //race time spent in the queue
+
+	Gate(int index, GridBlock block) {
+		this.index=index;
+		this.block=block;
+	}
+
+	//queue for the gate until it is this person's turn and the gate block is free - returns the block, now held
+	public GridBlock admit(int id, RaceClock clock, StallWatchdog watchdog) throws InterruptedException {
+		long since = clock.now();
+		long waitStart = System.nanoTime();
+		arrivals.increment();
+		RaceMetrics m = RaceMetrics.get();
+		if (m!=null) m.gateArrived(index);
+		long ticket = takeTicket();
+		awaitTurn(ticket, clock);
+		try {
+			while (!block.acquire(id, clock, watchdog)); //holding nothing, so never in a deadlock - a back-off tries again, still first in line
+		} finally {
+			nextTurn(clock); //the gate block is ours, or we gave up
+		}
+		admissions.increment();
+		waitMillis.add(clock.now()-since);
+		if (m!=null) m.gateAdmitted(index, System.nanoTime()-waitStart);
+		return block;
+	}
+
+	private long takeTicket() {
+		lock.lock();
+		try {
+			long ticket = nextTicket++;
+			longestQueue = (int) Math.max(longestQueue, nextTicket-serving);
+			return ticket;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//wait until the ticket is served
+	private void awaitTurn(long ticket, RaceClock clock) throws InterruptedException {
+		lock.lock();
+		try {
+			if (serving==ticket) return;
+			Condition turn = lock.newCondition();
+			waiting.put(ticket, turn);
+			clock.idle();
+			try {
+				while (serving!=ticket) turn.await();
+			} catch (InterruptedException e) {
+				if (waiting.remove(ticket)!=null) { //not counted back in yet - let the queue skip this ticket
+					clock.busy();
+					abandoned.add(ticket);
+				} else {
+					serving++; //our turn came just as we gave up - pass it on
+					callNext(clock);
+				}
+				throw e;
+			}
+		} finally {
+			lock.unlock();
+		}
+		clock.resume(); //outside the lock - may wait for a turn
+	}
+
+	//the ticket being served is done with - serve the next one still waiting
+	private void nextTurn(RaceClock clock) {
+		lock.lock();
+		try {
+			serving++;
+			callNext(clock);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//under lock
+	private void callNext(RaceClock clock) {
+		while (abandoned.remove(serving)) serving++;
+		Condition turn = waiting.remove(serving);
+		if (turn==null) return; //not waiting yet - will see it is served
+		clock.busy(); //count it back in before it runs
+		turn.signal();
+	}
+
+	public int getIndex() { return index; }
+
+	public GridBlock getBlock() { return block; }
+
+	public long getArrivals() { return arrivals.sum(); }
+
+	public long getAdmissions() { return admissions.sum(); }
+
+	public long getWaitMillis() { return waitMillis.sum(); }
+
+	//people with a ticket who are not in yet
+	public int getQueued() {
+		lock.lock();
+		try {
+			return (int) (nextTicket-serving);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getLongestQueue() {
+		lock.lock();
+		try {
+			return longestQueue;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -1,58 +1,213 @@
 //M. M. Kuttel 2024 mkuttel@gmail.com
 // GridBlock class to represent a block in the grid.
 // only one thread at a time "owns" a GridBlock - this must be enforced
+// Threads that wait park in arrival order, and a release wakes the longest waiting one, but the block
+// is not handed over: whoever calls get() first takes a free block, so a woken thread can lose it to a
+// newcomer and park again. Waiters are woken fairly; the block itself is not granted in order.
 
 package medleySimulation;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 public class GridBlock {
-	
-	private int isOccupied; 
-	
+
+	//ownership word: low 32 bits are owner ID+1 (0 means free), high 32 bits a version stamp bumped on every change
+	//null in the views handed out by CompactGrid, which keep ownership in per-region arrays instead
+	private final AtomicLong state;
+	private final ConcurrentLinkedQueue<Waiter> waiters; //parked threads, in arrival order
+
+	//contention counters
+	private final LongAdder acquires; //successful acquires
+	private final LongAdder failedAttempts; //attempts that found the block occupied
+	private final LongAdder retries; //compare-and-set lost to another thread
+
+	//a parked thread - signalled is cleared while it is counted idle on the race clock,
+	//and set again by whoever counts it back in, so that happens exactly once
+	static class Waiter {
+		final Thread thread = Thread.currentThread();
+		final AtomicBoolean signalled = new AtomicBoolean(true);
+	}
+
 	private final boolean isStart;  //is this a starting block?
-	private int [] coords; // the coordinate of the block.
-	
-	GridBlock(boolean startBlock) throws InterruptedException {
+	private final int x; // the coordinate of the block.
+	private final int y;
+
+	GridBlock(int x, int y, boolean startBlock) throws InterruptedException {
+		this(x,y,startBlock,true);
+	}
+
+	//ownState false is for subclasses that keep ownership somewhere else
+	protected GridBlock(int x, int y, boolean startBlock, boolean ownState) {
+		this.x=x;
+		this.y=y;
 		isStart=startBlock;
-		isOccupied= -1;
+		state = ownState ? new AtomicLong(0) : null;
+		waiters = ownState ? new ConcurrentLinkedQueue<Waiter>() : null;
+		acquires = ownState ? new LongAdder() : null;
+		failedAttempts = ownState ? new LongAdder() : null;
+		retries = ownState ? new LongAdder() : null;
 	}
-	
-	GridBlock(int x, int y, boolean startBlock) throws InterruptedException {
-		this(startBlock);
-		coords = new int [] {x,y};
-	}
-	
-	public   int getX() {return coords[0];}  
-	
-	public   int getY() {return coords[1];}
-	
-	
-	
-	//Get a block
-	public  boolean get(int threadID) throws InterruptedException {
-		if (isOccupied==threadID) return true; //thread Already in this block
-		if (isOccupied>=0) return false; //space is occupied
-		isOccupied= threadID;  //set ID to thread that had block
+
+	public   int getX() {return x;}
+
+	public   int getY() {return y;}
+
+	private static int ownerOf(long s) { return (int) s - 1; }
+
+	private static long stamp(long s, int owner) { return (((s>>>32)+1)<<32) | ((owner+1) & 0xffffffffL); }
+
+	//Get a block if it is free right now - does not wait, and does not defer to threads parked on it
+	public boolean get(int threadID) {
+		while (true) {
+			long s = state.get();
+			int owner = ownerOf(s);
+			if (owner==threadID) return true; //thread Already in this block
+			if (owner>=0) { //space is occupied
+				failedAttempts.increment();
+				return false;
+			}
+			if (state.compareAndSet(s, stamp(s,threadID))) {
+				acquires.increment();
+				return true;
+			}
+			retries.increment(); //someone else changed the block - look again
+		}
+	}
+
+	//mark the block free - returns false if it already was
+	protected boolean free() {
+		long s;
+		do {
+			s = state.get();
+			if (ownerOf(s)<0) return false;
+		} while (!state.compareAndSet(s, stamp(s,-1)));
 		return true;
 	}
-		
-	
-	//release a block
-	public  void release() {
-		isOccupied= -1;
+
+	//the queue of threads parked on this block - may be null if create is false and nobody has waited
+	protected ConcurrentLinkedQueue<Waiter> waitQueue(boolean create) {
+		return waiters;
+	}
+
+	//Get a block, parking (not spinning) until it is free
+	public void acquire(int threadID) throws InterruptedException {
+		acquire(threadID, RaceClock.WALL);
+	}
+
+	//Get a block, parking until it is free - the clock is told while this thread is blocked
+	public void acquire(int threadID, RaceClock clock) throws InterruptedException {
+		acquire(threadID, clock, null);
+	}
+
+	//Get a block, parking until it is free, and telling the watchdog while parked
+	//returns false, without the block, if the watchdog asks this thread to back off
+	public boolean acquire(int threadID, RaceClock clock, StallWatchdog watchdog) throws InterruptedException {
+		if (get(threadID)) return true;
+		Waiter me = new Waiter();
+		ConcurrentLinkedQueue<Waiter> waiters = waitQueue(true);
+		waiters.add(me);
+		StallWatchdog.Wait wait = watchdog!=null ? watchdog.waiting(threadID, this, me) : null;
+		try {
+			while (true) {
+				me.signalled.set(false); //from here a releaser counts us back in
+				if (get(threadID)) {
+					if (!me.signalled.compareAndSet(false, true)) clock.idle(); //a releaser already counted us in - undo it
+					return true;
+				}
+				clock.idle();
+				RaceMetrics m = RaceMetrics.get();
+				if (m!=null) m.parking();
+				LockSupport.park(this);
+				if (m!=null) m.unparked();
+				if (me.signalled.compareAndSet(false, true)) clock.busy(); //nobody woke us - count ourselves back in
+				clock.resume();
+				if (Thread.interrupted()) throw new InterruptedException();
+				if (wait!=null && wait.backOff) return false;
+			}
+		} finally {
+			if (wait!=null) watchdog.done(wait);
+			leave(waiters, me, clock);
+		}
+	}
+
+	//Get a block, waiting at most millis milliseconds - returns false if timed out
+	public boolean acquire(int threadID, long millis) throws InterruptedException {
+		if (get(threadID)) return true;
+		long deadline = System.nanoTime() + millis*1000000L;
+		Waiter me = new Waiter();
+		ConcurrentLinkedQueue<Waiter> waiters = waitQueue(true);
+		waiters.add(me);
+		try {
+			while (!get(threadID)) {
+				long left = deadline - System.nanoTime();
+				if (left<=0) return false;
+				RaceMetrics m = RaceMetrics.get();
+				if (m!=null) m.parking();
+				LockSupport.parkNanos(this, left);
+				if (m!=null) m.unparked();
+				if (Thread.interrupted()) throw new InterruptedException();
+			}
+			return true;
+		} finally {
+			leave(waiters, me, RaceClock.WALL);
+		}
+	}
+
+	//a waiter leaves the queue - if the block is free, wake whoever is next so the wake-up is not lost
+	private void leave(ConcurrentLinkedQueue<Waiter> waiters, Waiter me, RaceClock clock) {
+		waiters.remove(me);
+		if (!occupied()) wakeNext(clock);
+	}
+
+	private void wakeNext(RaceClock clock) {
+		ConcurrentLinkedQueue<Waiter> waiters = waitQueue(false);
+		if (waiters==null) return;
+		Waiter next = waiters.peek();
+		if (next==null) return;
+		if (next.signalled.compareAndSet(false, true)) clock.busy(); //count it back in before it runs
+		LockSupport.unpark(next.thread);
+	}
+
+	//release a block and wake the longest waiting thread, which then tries for it like anyone else
+	public void release() {
+		release(RaceClock.WALL);
+	}
+
+	//release a block, counting the woken thread back in on the race clock
+	public void release(RaceClock clock) {
+		if (free()) wakeNext(clock);
 	}
-	
+
 
 	//is a bloc already occupied?
-	public synchronized boolean occupied() {
-		if(isOccupied==-1) return false;
-		return true;
+	public boolean occupied() {
+		return owner()>=0;
 	}
-	
-	
+
+	//who owns the block, -1 if free
+	public int owner() {
+		return ownerOf(state.get());
+	}
+
+	//how many times the ownership word has changed
+	public int version() {
+		return (int) (state.get()>>>32);
+	}
+
 	//is a start block
 	public  boolean isStart() {
-		return isStart;	
+		return isStart;
 	}
 
+	//contention counters
+	public long getAcquires() { return acquires.sum(); }
+
+	public long getFailedAttempts() { return failedAttempts.sum(); }
+
+	public long getRetries() { return retries.sum(); }
+
 }
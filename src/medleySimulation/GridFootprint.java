@@ -0,0 +1,53 @@
+//Compares the memory used by the two grid representations: a GridBlock object per block,
+//and the compact grid's flat occupancy array.
+//Sizes are measured from the heap; object grids too big for the heap are estimated
+//from the per-block cost of the largest one that fitted.
+package medleySimulation;
+
+public class GridFootprint {
+	
+	//heap in use after a full collection
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+	
+	//bytes taken by a grid of this size, or -1 if it does not fit
+	static long measure(int x, int y, boolean compact) {
+		long before = usedHeap();
+		try {
+			StadiumGrid grid = new StadiumGrid(x, y, 1, 5, 20, 5, compact, RaceClock.WALL);
+			long after = usedHeap();
+			if (grid.getMaxX() != x) return -1; //keep grid reachable until measured
+			return after - before;
+		} catch (OutOfMemoryError | InterruptedException e) {
+			return -1;
+		}
+	}
+	
+	// usage: GridFootprint [XxY ...]   default 50x120 1000x1000 10000x10000
+	public static void main(String[] args) {
+		if (args.length == 0) args = new String[] {"50x120", "1000x1000", "10000x10000"};
+		System.out.println("grid\tblocks\tobjects bytes\tper block\tcompact bytes\tper block");
+		double perBlock = -1; //object cost per block from the largest measured grid
+		for (String a : args) {
+			int x = Integer.parseInt(a.substring(0, a.indexOf('x')));
+			int y = Integer.parseInt(a.substring(a.indexOf('x') + 1));
+			long blocks = (long) x * y;
+			long objects = measure(x, y, false);
+			String objectText;
+			if (objects >= 0) {
+				perBlock = (double) objects / blocks;
+				objectText = String.valueOf(objects);
+			} else {
+				objectText = perBlock < 0 ? "out of memory" : "~" + (long) (perBlock * blocks) + " (estimated)";
+			}
+			long compact = measure(x, y, true);
+			System.out.println(a + "\t" + blocks + "\t" + objectText + "\t"
+					+ (objects >= 0 ? String.format("%.1f", (double) objects / blocks) : "-") + "\t"
+					+ (compact >= 0 ? compact : "out of memory") + "\t"
+					+ (compact >= 0 ? String.format("%.1f", (double) compact / blocks) : "-"));
+		}
+	}
+}
@@ -0,0 +1,61 @@
+//Class dividing the stadium into regions that swimmers rarely share:
+//the water of each lane, the deck behind each lane, and the entrance.
+//A swimmer in the water only ever touches its own lane's region, so each region can be
+//managed on its own and lanes on different cores never touch the same memory.
+package medleySimulation;
+
+public class GridRegions {
+	
+	private final int x; //maximum x value
+	private final int y; //maximum y value
+	private final int startY; //first deck row - the starting blocks
+	private final int laneWidth;
+	private final int lanes;
+	private final int entranceX, entranceY;
+	
+	GridRegions(int x, int y, int startY, int laneWidth, int entranceX, int entranceY) {
+		this.x=x;
+		this.y=y;
+		this.startY=startY;
+		this.laneWidth=laneWidth;
+		this.lanes=(x+laneWidth-1)/laneWidth;
+		this.entranceX=entranceX;
+		this.entranceY=entranceY;
+	}
+	
+	//water of each lane, then deck of each lane, then the entrance
+	public int count() { return 2*lanes+1; }
+	
+	public int entrance() { return 2*lanes; }
+	
+	//region holding block (i,j)
+	public int regionOf(int i, int j) {
+		if (i==entranceX && j==entranceY) return entrance();
+		int lane = i/laneWidth;
+		return j<startY ? lane : lanes+lane;
+	}
+	
+	//index of block (i,j) within its region
+	public int indexIn(int region, int i, int j) {
+		if (region==entrance()) return 0;
+		return (i-left(region))*height(region) + (j-top(region));
+	}
+	
+	//blocks in a region - a lane's deck keeps a slot for the entrance even if it is not used
+	public int size(int region) {
+		return region==entrance() ? 1 : width(region)*height(region);
+	}
+	
+	private int left(int region) { return (region%lanes)*laneWidth; }
+	
+	private int top(int region) { return region<lanes ? 0 : startY; }
+	
+	private int width(int region) { return Math.min(laneWidth, x-left(region)); }
+	
+	private int height(int region) { return region<lanes ? startY : y-startY; }
+	
+	public String name(int region) {
+		if (region==entrance()) return "entrance";
+		return "lane " + region%lanes + (region<lanes ? " water" : " deck");
+	}
+}
@@ -0,0 +1,92 @@
+//Class to run a single race with no display, on a virtual clock.
+//Swimmers are the same threads as in the animation, but never really sleep.
+//With a seed, the race is scheduled deterministically and comes out the same every time.
+package medleySimulation;
+
+import java.util.Random;
+
+public class HeadlessRace {
+	
+	private final SimulationConfig config;
+	private final int numTeams;
+	private final int raceNumber; //which race of the batch, for its seed
+	private RaceLog log; //record the moves, if set
+	private RaceTrace trace; //binary trace of the race, if set
+	
+	private long raceTime; //simulated milliseconds the race took
+	private boolean stalled; //did the swimmers block each other for good?
+	private ResultsLedger ledger; //full results of the last run
+	private double handoffNanos; //mean relay handoff latency of the last run
+	private long detours; //steps round an occupied block on the deck in the last run
+	private long deadlocksBroken; //swimmers made to step aside in the last run
+	private Gate [] gates; //entrances of the last run, with their queue counts
+	
+	HeadlessRace(SimulationConfig config, int raceNumber) {
+		this.config=config;
+		this.numTeams=config.numTeams;
+		this.raceNumber=raceNumber;
+	}
+	
+	//record every move of the race
+	public void setLog(RaceLog log) {
+		this.log=log;
+	}
+	
+	//trace every move, block wait and finish of the race
+	public void setTrace(RaceTrace trace) {
+		this.trace=trace;
+	}
+	
+	//run the race to the end - returns the winning team, or -1 if no-one finished
+	public int run() throws InterruptedException {
+		RaceClock clock = config.seed!=null ? new DeterministicClock() : new VirtualClock();
+		Random rand = config.random(raceNumber);
+		FinishCounter finish = new FinishCounter(clock, numTeams, config.teamSize);
+		StadiumGrid grid = new StadiumGrid(config, clock);
+		if (log!=null) {
+			config.describe(log);
+			grid.setLog(log);
+		}
+		if (trace!=null) grid.setTrace(trace);
+		int swimmers = numTeams * config.teamSize;
+		PeopleLocation[] people = new PeopleLocation[swimmers + config.spectators];
+		SwimTeam[] teams = new SwimTeam[numTeams];
+		for (int i = 0; i < numTeams; i++) {
+			teams[i] = new SwimTeam(i, grid, finish, people, config.threadMode, config.teamSize, new Random(rand.nextLong())); //swimmers join the clock here
+		}
+		Crowd crowd = config.spectators>0 ? new Crowd(swimmers, config.spectators, grid, people, config.threadMode, config.crowdArrivalMillis, config.visitMillis, new Random(rand.nextLong())) : null; //after the teams, so their speeds do not change
+		for (int i = 0; i < numTeams; i++) teams[i].start();
+		if (crowd!=null) crowd.start();
+		
+		stalled = !clock.awaitEnd();
+		if (stalled) {
+			for (int i = 0; i < numTeams; i++) teams[i].stopSwimmers(); //wake anyone stuck on a block
+			if (crowd!=null) crowd.stop();
+		}
+		for (int i = 0; i < numTeams; i++) teams[i].join();
+		if (crowd!=null) crowd.join();
+		raceTime = clock.now();
+		ledger = finish.getLedger();
+		double sum = 0;
+		for (int i = 0; i < numTeams; i++) sum += teams[i].getBaton().getMeanHandoffNanos();
+		handoffNanos = sum/numTeams;
+		detours = grid.getDetours();
+		deadlocksBroken = grid.getDeadlocksBroken();
+		gates = grid.getGates();
+		return finish.isRaceWon() ? finish.getWinningTeam() : -1;
+	}
+	
+	public long getRaceTime() { return raceTime; }
+	
+	public boolean hasStalled() { return stalled; }
+	
+	public ResultsLedger getLedger() { return ledger; }
+	
+	public double getMeanHandoffNanos() { return handoffNanos; }
+	
+	public long getDetours() { return detours; }
+	
+	public long getDeadlocksBroken() { return deadlocksBroken; }
+	
+	public Gate [] getGates() { return gates; }
+}
@@ -0,0 +1,84 @@
+//Class for a run of blocks a swimmer holds ahead of it in its lane.
+//Instead of negotiating every stroke for the next block, the swimmer reserves up to a window
+//of free blocks in one go, strokes through them with no further acquires, and hands back the
+//blocks behind it a window at a time. Each block still has one owner: reserving is the same
+//get() as any other move, it just happens before the swimmer gets there.
+package medleySimulation;
+
+public class LaneReservation {
+
+	private final StadiumGrid stadium;
+	private final PeopleLocation who;
+	private final int id;
+	private final int x; //the lane's column
+	private final int toY; //where the run ends
+	private final int dir; //+1 or -1 along the lane
+	private final int window; //blocks reserved, and released, at once
+	//blocks held, in order along the lane: released <= entered < reserved, as positions in a ring
+	private final GridBlock [] ring;
+	private int released; //first block not yet released
+	private int entered; //next block to move onto
+	private int reserved; //next free slot
+	private GridBlock current;
+	private GridBlock origin; //block the run started from - released as soon as it is left
+	private int nextY; //next row to reserve
+
+	LaneReservation(StadiumGrid stadium, GridBlock from, int fromY, int toY, PeopleLocation who, int window) {
+		this.stadium=stadium;
+		this.who=who;
+		this.id=who.getID();
+		this.x=from.getX();
+		this.toY=toY;
+		this.dir=toY<fromY ? -1 : 1;
+		this.window=Math.max(1, window);
+		ring = new GridBlock[2*this.window]; //a window behind, and one ahead
+		this.current=from;
+		this.origin=from;
+		this.nextY=fromY;
+	}
+
+	//is the swimmer at the end of the run?
+	public boolean done() {
+		return current!=origin && current.getY()==toY;
+	}
+
+	//move on to the next block of the run, reserving more first if none are left - waits only if the very next block is taken
+	public GridBlock step() throws InterruptedException {
+		if (done()) return current;
+		long waited = stadium.waitStart();
+		if (entered==reserved) reserve();
+		GridBlock next = ring[entered++ % ring.length];
+		stadium.enter(who, next, origin, waited);
+		origin = null;
+		current = next;
+		if (entered-1-released>=window) releaseBehind();
+		return current;
+	}
+
+	//claim up to a window of blocks ahead, stopping at the first one that is taken
+	private void reserve() throws InterruptedException {
+		ring[reserved++ % ring.length] = stadium.acquireLane(current, stadium.whichBlock(x, nextY), id); //must have at least the next one
+		int last = nextY;
+		nextY += dir;
+		while (reserved-entered<window && last!=toY) {
+			GridBlock b = stadium.whichBlock(x, nextY);
+			if (!b.get(id)) break;
+			ring[reserved++ % ring.length] = b;
+			last = nextY;
+			nextY += dir;
+		}
+	}
+
+	//hand back the blocks already swum through, up to the one the swimmer is on
+	private void releaseBehind() {
+		for (; released<entered-1; released++) stadium.release(ring[released % ring.length], id);
+	}
+
+	//end of the run - hand back everything but the block the swimmer is on
+	public GridBlock finish() {
+		releaseBehind();
+		for (int i = entered; i<reserved; i++) stadium.release(ring[i % ring.length], id);
+		reserved = entered;
+		return current;
+	}
+}
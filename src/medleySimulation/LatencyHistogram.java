@@ -0,0 +1,54 @@
+//Class counting latencies in power-of-two buckets of nanoseconds, with no locks.
+//Bucket b holds values below 2^b ns, so recording is one leading-zero count and one add.
+package medleySimulation;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+	
+	private final LongAdder [] buckets = new LongAdder[64];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder(); //nanoseconds
+	
+	LatencyHistogram() {
+		for (int b = 0; b < buckets.length; b++) buckets[b] = new LongAdder();
+	}
+	
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+		count.increment();
+		sum.add(nanos);
+	}
+	
+	public long getCount() { return count.sum(); }
+	
+	public long getSumNanos() { return sum.sum(); }
+	
+	public double getMeanNanos() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+	
+	//values recorded below 2^power nanoseconds
+	public long countBelow(int power) {
+		long n = 0;
+		for (int b = 0; b <= Math.min(power, buckets.length-1); b++) n += buckets[b].sum();
+		return n;
+	}
+	
+	//Prometheus histogram in seconds, with buckets from 1us to about a minute
+	public void writePrometheus(StringBuilder out, String name, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" histogram\n");
+		long cumulative = countBelow(8);
+		for (int b = 10; b <= 36; b += 2) { //1us, 4us, 16us ... 68s
+			cumulative += buckets[b-1].sum() + buckets[b].sum();
+			out.append(name).append("_bucket{le=\"").append((1L << b) / 1e9).append("\"} ").append(cumulative).append('\n');
+		}
+		for (int b = 37; b < buckets.length; b++) cumulative += buckets[b].sum();
+		out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+		out.append(name).append("_sum ").append(getSumNanos() / 1e9).append('\n');
+		out.append(name).append("_count ").append(cumulative).append('\n'); //matches the buckets, even mid-update
+	}
+}
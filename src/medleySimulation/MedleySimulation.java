@@ -7,23 +7,22 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 public class MedleySimulation {
-	static final int numTeams = 10;
+	static SimulationConfig config; // sizes of the stadium and teams, from the command line
+	static int numTeams; // from config
 
-	static int frameX = 300; // frame width
-	static int frameY = 600;  // frame height
 	static int yLimit = 400;
 	static int max = 5;
 
-	static int gridX = 50; // number of x grid points
-	static int gridY = 120; // number of y grid points
-
 	static SwimTeam[] teams; // array for team threads
+	static Crowd crowd; // spectators, if any
 	static PeopleLocation[] peopleLocations;  // array to keep track of where people are
 	static StadiumView stadiumView; // threaded panel to display stadium
 	static StadiumGrid stadiumGrid; // stadium on a discrete grid
 
+	static RaceTrace trace; // binary trace of the race, if asked for
+
 	static FinishCounter finishLine; // records who won
-	static CounterDisplay counterDisplay; // threaded display of counter
+	static CounterDisplay counterDisplay; // display of the winner, updated when the race is won
 
 	// Method to setup all the elements of the GUI
 	public static void setupGUI(int frameX, int frameY) {
@@ -36,7 +35,7 @@ public class MedleySimulation {
 		g.setLayout(new BoxLayout(g, BoxLayout.Y_AXIS));
 		g.setSize(frameX, frameY);
 
-		stadiumView = new StadiumView(peopleLocations, stadiumGrid);
+		stadiumView = new StadiumView(peopleLocations, stadiumGrid, config.targetFps);
 		stadiumView.setSize(frameX, frameY);
 		g.add(stadiumView);
 
@@ -47,7 +46,7 @@ public class MedleySimulation {
 		txt.add(winner);
 		g.add(txt);
 
-		counterDisplay = new CounterDisplay(winner, finishLine); // thread to update score
+		counterDisplay = new CounterDisplay(winner, finishLine); // listens for the winner
 
 		// Add start and exit buttons
 		JPanel b = new JPanel();
@@ -61,14 +60,11 @@ public class MedleySimulation {
 				Thread view = new Thread(stadiumView);
 				view.start();
 
-				// Start the counter thread for updating results
-				Thread results = new Thread(counterDisplay);
-				results.start();
-
 				// Start the teams, which in turn start the swimmers
 				for (int i = 0; i < numTeams; i++) {
 					teams[i].start();
 				}
+				if (crowd != null) crowd.start();
 
 				// Disable the start button to prevent multiple clicks
 				startB.setEnabled(false);
@@ -79,6 +75,15 @@ public class MedleySimulation {
 		// Add the listener to the JButton to handle the "pressed" event
 		endB.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
+				stadiumGrid.dumpContention(System.out, 10); // show the contention hotspots
+				if (trace != null) {
+					try {
+						stopRace(); // nobody may still be recording while the trace is read
+						System.out.println(trace.write(config.trace) + " events traced to " + config.trace + ", " + trace.getDropped() + " dropped");
+					} catch (java.io.IOException | InterruptedException ex) {
+						System.err.println("could not write trace: " + ex.getMessage());
+					}
+				}
 				System.exit(0);
 			}
 		});
@@ -93,18 +98,47 @@ public class MedleySimulation {
 		frame.setVisible(true);
 	}
 
-	// Main method - starts it all
-	public static void main(String[] args) throws InterruptedException {
-		finishLine = new FinishCounter(); // Counters for people inside and outside club
+	// Stop every swimmer and spectator, and wait for their threads to end
+	static void stopRace() throws InterruptedException {
+		for (int i = 0; i < numTeams; i++) teams[i].stopSwimmers();
+		if (crowd != null) crowd.stop();
+		for (int i = 0; i < numTeams; i++) teams[i].join();
+		if (crowd != null) crowd.join();
+	}
 
-		stadiumGrid = new StadiumGrid(gridX, gridY, numTeams, finishLine); // Setup stadium with size
-		SwimTeam.stadium = stadiumGrid; // Grid shared with class
-		Swimmer.stadium = stadiumGrid; // Grid shared with class
-		peopleLocations = new PeopleLocation[numTeams * SwimTeam.sizeOfTeam]; // Four swimmers per team
+	// Main method - starts it all
+	public static void main(String[] args) throws InterruptedException, java.io.IOException {
+		try {
+			config = SimulationConfig.load(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(SimulationConfig.usage);
+			System.exit(1);
+		}
+		AsyncLog.OUT.setLevel(config.logLevel); // swimmer progress messages
+		if (config.headless) { // batch of races with no display - it installs its own metrics
+			BatchRunner.runBatch(config);
+			return;
+		}
+		config.installMetrics(); // JMX and, with a port, Prometheus text
+		numTeams = config.numTeams;
+		RaceClock clock = new RaceClock(); // wall clock for the animation
+		finishLine = new FinishCounter(clock, numTeams, config.teamSize); // Counters for people inside and outside club
+
+		stadiumGrid = new StadiumGrid(config, clock); // Setup stadium with size
+		stadiumGrid.watchStalls(250, config.stallMillis); // report and break deadlocks
+		if (config.trace != null) {
+			trace = new RaceTrace(config.traceBuffer, numTeams * config.teamSize); // swimmers only
+			stadiumGrid.setTrace(trace);
+		}
+		int swimmers = numTeams * config.teamSize; // one swimmer per leg
+		peopleLocations = new PeopleLocation[swimmers + config.spectators];
 		teams = new SwimTeam[numTeams];
+		java.util.Random rand = config.random(0); // seeded speeds if asked for
 		for (int i = 0; i < numTeams; i++) {
-			teams[i] = new SwimTeam(i, finishLine, peopleLocations);
+			teams[i] = new SwimTeam(i, stadiumGrid, finishLine, peopleLocations, config.threadMode, config.teamSize, new java.util.Random(rand.nextLong()));
 		}
-		setupGUI(frameX, frameY); // Start Panel thread - for drawing animation
+		if (config.spectators > 0) crowd = new Crowd(swimmers, config.spectators, stadiumGrid, peopleLocations, config.threadMode, config.crowdArrivalMillis, config.visitMillis, new java.util.Random(rand.nextLong()));
+		setupGUI(config.frameX, config.frameY); // Start Panel thread - for drawing animation
 	}
 }
@@ -10,9 +10,9 @@ public class PeopleLocation  { // this is made a separate class so don't have to
 	private final int ID; //each person has an ID
 	private Color myColor; //colour of the person
 	
-	private boolean inStadium; //are they here?
+	private volatile boolean inStadium; //are they here?
 	private boolean arrived; //have they arrived at the event?
-	private GridBlock location; //which GridBlock are they on?
+	private volatile GridBlock location; //which GridBlock are they on? - read by the snapshot publisher
 	
 	//constructor
 	PeopleLocation(int ID , Color c) {
@@ -42,7 +42,7 @@ public class PeopleLocation  { // this is made a separate class so don't have to
 	public  void setLocation(GridBlock location) {
 		this.location = location;
 	}
-
+	
 	//getter
 	public  int getX() { return location.getX();}	
 	
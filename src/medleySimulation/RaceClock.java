@@ -0,0 +1,50 @@
+//Class representing the clock a race runs on.
+//This one is the wall clock: sleeping really sleeps. VirtualClock replaces it for headless races,
+//and DeterministicClock for seeded races that must come out the same every time.
+package medleySimulation;
+
+import java.util.function.BooleanSupplier;
+
+public class RaceClock {
+	
+	public static final RaceClock WALL = new RaceClock(); //shared wall clock for callers outside a race
+	
+	private final long startTime = System.currentTimeMillis();
+	
+	//milliseconds since the race was set up
+	public long now() {
+		return System.currentTimeMillis() - startTime;
+	}
+	
+	//a swimmer takes time to do something
+	public void sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+	
+	//a swimmer thread takes part in the race - call before the thread is started
+	public void join() {}
+	
+	//first thing a swimmer thread does - id fixes its turn when swimmers are scheduled in order
+	public void begin(int id) throws InterruptedException {}
+	
+	//a swimmer thread is done with the race
+	public void leave() {}
+	
+	//a swimmer is about to block waiting for another swimmer (e.g. for a GridBlock)
+	public void idle() {}
+	
+	//a blocked swimmer can carry on - called once for every idle(), by the swimmer or whoever woke it
+	public void busy() {}
+	
+	//a blocked swimmer has woken up and is about to carry on - called by the swimmer itself, holding no locks
+	public void resume() throws InterruptedException {}
+	
+	//called, holding the clock's lock, when every swimmer is blocked - returns true if it freed someone
+	//and the race can go on; the wall clock never knows, so it never calls it
+	public void setStallHandler(BooleanSupplier handler) {}
+	
+	//wait until every swimmer has left - returns false if the race stalled first
+	public boolean awaitEnd() throws InterruptedException {
+		return true;
+	}
+}
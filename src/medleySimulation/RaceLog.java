@@ -0,0 +1,103 @@
+//Class recording every move in a race: when, who, and which block they moved to.
+//A log can be written to a file and read back to replay the race at any speed,
+//and its checksum tells whether two seeded runs really did the same thing.
+package medleySimulation;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RaceLog {
+	
+	private long [] times = new long[1024];
+	private int [] people = new int[1024]; //person ID
+	private int [] cells = new int[1024]; //x<<16 | y
+	private int size;
+	private static final int gone = -1; //cell of someone who has left
+	private final Map<String, String> settings = new LinkedHashMap<String, String>(); //what the race was run with
+	
+	//note a setting the race was run with, so a replay can rebuild the stadium
+	public void setting(String key, Object value) {
+		settings.put(key, String.valueOf(value));
+	}
+	
+	public String getSetting(String key) {
+		return settings.get(key);
+	}
+	
+	//a person moved to block (x,y) at race clock time
+	public synchronized void move(long time, int id, int x, int y) {
+		if (size == times.length) {
+			times = Arrays.copyOf(times, size*2);
+			people = Arrays.copyOf(people, size*2);
+			cells = Arrays.copyOf(cells, size*2);
+		}
+		times[size] = time;
+		people[size] = id;
+		cells[size] = (x<<16) | y;
+		size++;
+	}
+	
+	//a person left the stadium at race clock time - recorded as a move to no block
+	public void left(long time, int id) {
+		move(time, id, gone>>>16, gone & 0xffff);
+	}
+	
+	public synchronized int size() { return size; }
+	
+	public synchronized long getTime(int i) { return times[i]; }
+	
+	public synchronized int getPerson(int i) { return people[i]; }
+	
+	public synchronized int getX(int i) { return cells[i]>>>16; }
+	
+	public synchronized int getY(int i) { return cells[i] & 0xffff; }
+	
+	//is move i someone leaving?
+	public synchronized boolean hasLeft(int i) { return cells[i]==gone; }
+	
+	//same events in the same order give the same checksum
+	public synchronized long checksum() {
+		long h = 1125899906842597L;
+		for (int i = 0; i < size; i++) {
+			h = 31*h + times[i];
+			h = 31*h + people[i];
+			h = 31*h + cells[i];
+		}
+		return h;
+	}
+	
+	//settings as "# key=value" lines, then one "time id x y" line per move
+	public synchronized void write(PrintStream out) {
+		for (Map.Entry<String, String> e : settings.entrySet()) out.println("# " + e.getKey() + "=" + e.getValue());
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sb.append(times[i]).append(' ').append(people[i]).append(' ')
+			  .append(cells[i]>>>16).append(' ').append(cells[i] & 0xffff).append('\n');
+		}
+		out.print(sb);
+	}
+	
+	//read a log written by write()
+	public static RaceLog read(String path) throws IOException {
+		RaceLog log = new RaceLog();
+		try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.isEmpty()) continue;
+				if (line.startsWith("# ")) {
+					int eq = line.indexOf('=');
+					log.setting(line.substring(2, eq), line.substring(eq+1));
+					continue;
+				}
+				String [] f = line.split(" ");
+				log.move(Long.parseLong(f[0]), Integer.parseInt(f[1]), Integer.parseInt(f[2]), Integer.parseInt(f[3]));
+			}
+		}
+		return log;
+	}
+}
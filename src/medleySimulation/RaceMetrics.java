@@ -0,0 +1,186 @@
+//Class keeping counters and latency histograms for everything the simulation does:
+//moves, block waits, swimmers parked on blocks, legs, finishes, rendered frames and people through each gate.
+//Everything is a LongAdder, so recording never takes a lock. Metrics are off unless installed,
+//and then a swimmer pays one volatile read per event. They are shown through JMX and,
+//if a port is given, as Prometheus text over HTTP.
+package medleySimulation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class RaceMetrics implements RaceMetricsMBean {
+	
+	private static volatile RaceMetrics installed; //null when metrics are off
+	
+	private final long startNanos = System.nanoTime();
+	private final LongAdder moves = new LongAdder();
+	private final LatencyHistogram blockWait = new LatencyHistogram(); //acquiring a block, fast or slow
+	private final LongAdder parks = new LongAdder(); //times a swimmer parked on an occupied block
+	private final AtomicInteger blocked = new AtomicInteger(); //swimmers parked right now
+	private final LongAdder legs = new LongAdder();
+	private final LatencyHistogram finish = new LatencyHistogram(); //recording a team's finish and telling listeners
+	private final LatencyHistogram frame = new LatencyHistogram(); //painting a frame
+	//per gate: arrivals, admissions and total nanoseconds queued
+	private final ConcurrentHashMap<Integer, LongAdder[]> gates = new ConcurrentHashMap<Integer, LongAdder[]>();
+	private HttpServer server;
+	
+	//the metrics being collected, or null if they are off
+	public static RaceMetrics get() { return installed; }
+	
+	//start collecting, register the MBean, and serve Prometheus text on localhost:port if port is positive
+	public static synchronized RaceMetrics install(int port) throws IOException {
+		if (installed != null) return installed;
+		RaceMetrics m = new RaceMetrics();
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(m, new ObjectName("medleySimulation:type=RaceMetrics"));
+		} catch (JMException e) {
+			throw new IllegalStateException("could not register metrics MBean", e);
+		}
+		if (port > 0) m.serve(port);
+		installed = m;
+		return m;
+	}
+	
+	//stop the HTTP endpoint, e.g. at the end of a batch
+	public synchronized void stop() {
+		if (server != null) server.stop(0);
+		server = null;
+	}
+	
+	private void serve(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", exchange -> {
+			byte [] body = prometheus().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+	}
+	
+	//a swimmer moved onto a block after waiting waitNanos for it
+	public void moved(long waitNanos) {
+		moves.increment();
+		blockWait.record(waitNanos);
+	}
+	
+	//a swimmer is about to park on an occupied block
+	public void parking() {
+		parks.increment();
+		blocked.incrementAndGet();
+	}
+	
+	//a parked swimmer has woken
+	public void unparked() {
+		blocked.decrementAndGet();
+	}
+	
+	public void legSwum() { legs.increment(); }
+	
+	public void finished(long nanos) { finish.record(nanos); }
+	
+	public void framePainted(long nanos) { frame.record(nanos); }
+	
+	private LongAdder [] gate(int g) {
+		return gates.computeIfAbsent(g, k -> new LongAdder[] {new LongAdder(), new LongAdder(), new LongAdder()});
+	}
+	
+	//someone joined the queue at a gate
+	public void gateArrived(int g) { gate(g)[0].increment(); }
+	
+	//someone was let in at a gate after queueing waitNanos
+	public void gateAdmitted(int g, long waitNanos) {
+		LongAdder [] a = gate(g);
+		a[1].increment();
+		a[2].add(waitNanos);
+	}
+	
+	//one per gate, in gate order
+	private long [] gateCounts(int which) {
+		TreeMap<Integer, LongAdder[]> sorted = new TreeMap<Integer, LongAdder[]>(gates);
+		long [] n = new long[sorted.isEmpty() ? 0 : sorted.lastKey()+1];
+		for (Map.Entry<Integer, LongAdder[]> e : sorted.entrySet()) n[e.getKey()] = e.getValue()[which].sum();
+		return n;
+	}
+	
+	public long [] getGateArrivals() { return gateCounts(0); }
+	
+	public long [] getGateAdmissions() { return gateCounts(1); }
+	
+	public long getMoves() { return moves.sum(); }
+	
+	//average since metrics were installed
+	public double getMovesPerSecond() {
+		return moves.sum() / Math.max(1e-9, (System.nanoTime()-startNanos)/1e9);
+	}
+	
+	public long getBlockWaits() { return blockWait.getCount(); }
+	
+	public double getMeanBlockWaitMicros() { return blockWait.getMeanNanos()/1e3; }
+	
+	public long getParks() { return parks.sum(); }
+	
+	public int getBlockedSwimmers() { return blocked.get(); }
+	
+	public long getLegs() { return legs.sum(); }
+	
+	public long getFinishes() { return finish.getCount(); }
+	
+	public double getMeanFinishMicros() { return finish.getMeanNanos()/1e3; }
+	
+	public long getFrames() { return frame.getCount(); }
+	
+	public double getMeanFrameMillis() { return frame.getMeanNanos()/1e6; }
+	
+	//everything in Prometheus text format
+	public String prometheus() {
+		StringBuilder out = new StringBuilder();
+		counter(out, "medley_moves_total", "Blocks moved onto by swimmers", moves.sum());
+		counter(out, "medley_parks_total", "Times a swimmer parked waiting for a block", parks.sum());
+		out.append("# HELP medley_blocked_swimmers Swimmers parked on a block right now\n");
+		out.append("# TYPE medley_blocked_swimmers gauge\n");
+		out.append("medley_blocked_swimmers ").append(blocked.get()).append('\n');
+		counter(out, "medley_legs_total", "Relay legs swum", legs.sum());
+		blockWait.writePrometheus(out, "medley_block_wait_seconds", "Time taken to acquire a block");
+		finish.writePrometheus(out, "medley_finish_seconds", "Time taken to record a team finish and notify listeners");
+		frame.writePrometheus(out, "medley_frame_seconds", "Time taken to paint a frame");
+		if (!gates.isEmpty()) {
+			TreeMap<Integer, LongAdder[]> sorted = new TreeMap<Integer, LongAdder[]>(gates);
+			String [][] families = {
+					{"medley_gate_arrivals_total", "People who joined the queue at a gate"},
+					{"medley_gate_admissions_total", "People let in at a gate"},
+					{"medley_gate_queue_seconds_total", "Time people spent queueing at a gate"}};
+			for (int f = 0; f < families.length; f++) {
+				out.append("# HELP ").append(families[f][0]).append(' ').append(families[f][1]).append('\n');
+				out.append("# TYPE ").append(families[f][0]).append(" counter\n");
+				for (Map.Entry<Integer, LongAdder[]> e : sorted.entrySet()) {
+					long v = e.getValue()[f].sum();
+					out.append(families[f][0]).append("{gate=\"").append(e.getKey()).append("\"} ").append(f == 2 ? String.valueOf(v/1e9) : String.valueOf(v)).append('\n');
+				}
+			}
+		}
+		return out.toString();
+	}
+	
+	private static void counter(StringBuilder out, String name, String help, long value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" counter\n");
+		out.append(name).append(' ').append(value).append('\n');
+	}
+}
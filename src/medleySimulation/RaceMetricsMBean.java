@@ -0,0 +1,31 @@
+//What RaceMetrics shows through JMX, e.g. in jconsole under medleySimulation:type=RaceMetrics
+package medleySimulation;
+
+public interface RaceMetricsMBean {
+	
+	long getMoves();
+	
+	double getMovesPerSecond();
+	
+	long getBlockWaits();
+	
+	double getMeanBlockWaitMicros();
+	
+	long getParks();
+	
+	int getBlockedSwimmers();
+	
+	long getLegs();
+	
+	long getFinishes();
+	
+	double getMeanFinishMicros();
+	
+	long getFrames();
+	
+	double getMeanFrameMillis();
+	
+	long [] getGateArrivals();
+	
+	long [] getGateAdmissions();
+}
@@ -0,0 +1,100 @@
+//Plays back a race from a move log, in the same view as the live animation.
+//speed 1 is real time, 10 is ten times faster, 0 jumps straight to the end.
+package medleySimulation;
+
+import java.io.IOException;
+
+import javax.swing.JFrame;
+
+public class RaceReplay implements Runnable {
+	
+	private final RaceLog log;
+	private final double speed;
+	private final StadiumGrid grid; //only for its blocks - nobody acquires them
+	private final PeopleLocation [] people;
+	
+	RaceReplay(RaceLog log, double speed) throws InterruptedException {
+		this.log=log;
+		this.speed=speed;
+		SimulationConfig config = new SimulationConfig();
+		for (String key : new String[] {"gridX", "gridY", "teams", "teamSize", "laneWidth", "startOffset", "entranceOffset"}) {
+			config.set(key, log.getSetting(key));
+		}
+		for (String key : new String[] {"standColumns", "gates", "spectators"}) { //not in logs from before there were crowds
+			if (log.getSetting(key) != null) config.set(key, log.getSetting(key));
+		}
+		config.validate();
+		grid = new StadiumGrid(config, RaceClock.WALL);
+		int swimmers = config.numTeams*config.teamSize;
+		people = new PeopleLocation[swimmers+config.spectators];
+		Swimmer.SwimStroke [] strokes = Swimmer.SwimStroke.values();
+		for (int i = 0; i < people.length; i++) people[i] = new PeopleLocation(i, i<swimmers ? strokes[i%config.teamSize].getColour() : Crowd.colour);
+	}
+	
+	public PeopleLocation [] getPeople() { return people; }
+	
+	public StadiumGrid getGrid() { return grid; }
+	
+	//move everyone as the log says, keeping to the log's timing at the chosen speed
+	public void run() {
+		long start = System.nanoTime();
+		for (int i = 0; i < log.size(); i++) {
+			if (speed > 0) {
+				long due = start + (long) (log.getTime(i) * 1000000L / speed);
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					try {
+						Thread.sleep(wait/1000000, (int) (wait%1000000));
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+			apply(i);
+		}
+	}
+	
+	//make move i of the log
+	private void apply(int i) {
+		PeopleLocation p = people[log.getPerson(i)];
+		if (log.hasLeft(i)) {
+			p.setInStadium(false);
+			return;
+		}
+		p.setLocation(grid.whichBlock(log.getX(i), log.getY(i)));
+		p.setInStadium(true);
+	}
+	
+	//make the moves from next on, up to race time - returns the first move not made
+	public int playUntil(int next, long time) {
+		while (next < log.size() && log.getTime(next) <= time) apply(next++);
+		return next;
+	}
+	
+	//race time of the last move
+	public long getEndTime() {
+		return log.size() == 0 ? 0 : log.getTime(log.size()-1);
+	}
+	
+	// usage: RaceReplay log-file [speed]
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("usage: RaceReplay log-file [speed]");
+			System.exit(1);
+		}
+		RaceLog log = RaceLog.read(args[0]);
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+		System.out.println(log.size() + " moves, checksum " + Long.toHexString(log.checksum()));
+		RaceReplay replay = new RaceReplay(log, speed);
+		
+		JFrame frame = new JFrame("Swim medley relay replay");
+		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		frame.setSize(300, 600);
+		StadiumView view = new StadiumView(replay.getPeople(), replay.getGrid(), 30);
+		frame.setLocationRelativeTo(null);
+		frame.setContentPane(view);
+		frame.setVisible(true);
+		new Thread(view).start();
+		new Thread(replay).start();
+	}
+}
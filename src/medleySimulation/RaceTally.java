@@ -0,0 +1,206 @@
+//Class adding up the results of many races: wins per team, split times per stroke, and how the races went.
+//Each group of races fills its own tally with no sharing, and tallies are merged at the end.
+package medleySimulation;
+
+import java.util.Arrays;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class RaceTally {
+	
+	private static final double z95 = 1.96; //95% confidence
+	
+	private final int numTeams;
+	private final int teamSize;
+	private long races;
+	private final long [] wins; //per team
+	private long noWinner; //races no-one finished
+	private long stalls; //races where swimmers blocked each other for good
+	private long simulatedTime; //total simulated milliseconds
+	private long handoffNanos; //total of each race's mean relay handoff latency
+	private long detours; //total steps round an occupied block on the deck
+	private long deadlocksBroken; //swimmers made to step aside
+	private long firstDives; //first legs started
+	private long firstDiveTime; //total race time of the first dives - how long the lead-off swimmers took to reach their blocks
+	private long takeovers; //later legs started
+	private long lateTakeovers; //later legs whose swimmer was not on the block when the previous one touched
+	private long lateTime; //total time the team waited for them
+	
+	//per gate, sized by the first race with gates
+	private long [] gateArrivals = new long[0];
+	private long [] gateAdmissions = new long[0];
+	private long [] gateWaitMillis = new long[0];
+	private int [] longestQueue = new int[0];
+	private long crowdTime; //simulated milliseconds of the races with gates counted
+	
+	//splits per stroke, for mean and variance
+	private final long [] splits = new long[SwimStroke.values().length];
+	private final double [] splitSum = new double[SwimStroke.values().length];
+	private final double [] splitSumSq = new double[SwimStroke.values().length];
+	
+	RaceTally(int numTeams, int teamSize) {
+		this.numTeams=numTeams;
+		this.teamSize=teamSize;
+		wins = new long[numTeams];
+	}
+	
+	//add a race that has been run
+	public void add(HeadlessRace race, int winner) {
+		add(race.getLedger(), winner, race.getRaceTime(), race.hasStalled(), race.getMeanHandoffNanos());
+		detours += race.getDetours();
+		deadlocksBroken += race.getDeadlocksBroken();
+		Gate [] gates = race.getGates();
+		if (gates == null) return;
+		growGates(gates.length);
+		for (Gate g : gates) {
+			int i = g.getIndex();
+			gateArrivals[i] += g.getArrivals();
+			gateAdmissions[i] += g.getAdmissions();
+			gateWaitMillis[i] += g.getWaitMillis();
+			longestQueue[i] = Math.max(longestQueue[i], g.getLongestQueue());
+		}
+		crowdTime += race.getRaceTime();
+	}
+	
+	private void growGates(int n) {
+		if (n <= gateArrivals.length) return;
+		gateArrivals = Arrays.copyOf(gateArrivals, n);
+		gateAdmissions = Arrays.copyOf(gateAdmissions, n);
+		gateWaitMillis = Arrays.copyOf(gateWaitMillis, n);
+		longestQueue = Arrays.copyOf(longestQueue, n);
+	}
+	
+	//add a race from its results and how it went
+	public void add(ResultsLedger ledger, int winner, long raceTime, boolean stalled, double meanHandoffNanos) {
+		races++;
+		if (winner>=0) wins[winner]++;
+		else noWinner++;
+		if (stalled) stalls++;
+		simulatedTime += raceTime;
+		handoffNanos += (long) meanHandoffNanos;
+		for (int i = 0; i < numTeams*teamSize; i++) {
+			long split = ledger.getSplit(i);
+			if (split < 0) continue; //leg not swum
+			int s = i % teamSize; //strokes are swum in order
+			splits[s]++;
+			splitSum[s] += split;
+			splitSumSq[s] += (double) split*split;
+		}
+		for (int i = 0; i < numTeams*teamSize; i++) {
+			long dive = ledger.getLegStart(i);
+			if (dive < 0) continue;
+			if (i % teamSize == 0) {
+				firstDives++;
+				firstDiveTime += dive;
+				continue;
+			}
+			long touch = ledger.getLegFinish(i-1); //a swimmer on the block dives the moment the last one touches
+			takeovers++;
+			if (touch >= 0 && dive > touch) {
+				lateTakeovers++;
+				lateTime += dive - touch;
+			}
+		}
+	}
+	
+	//add another tally's races to this one
+	public RaceTally merge(RaceTally other) {
+		races += other.races;
+		for (int t = 0; t < numTeams; t++) wins[t] += other.wins[t];
+		noWinner += other.noWinner;
+		stalls += other.stalls;
+		simulatedTime += other.simulatedTime;
+		handoffNanos += other.handoffNanos;
+		detours += other.detours;
+		deadlocksBroken += other.deadlocksBroken;
+		firstDives += other.firstDives;
+		firstDiveTime += other.firstDiveTime;
+		takeovers += other.takeovers;
+		lateTakeovers += other.lateTakeovers;
+		lateTime += other.lateTime;
+		growGates(other.gateArrivals.length);
+		for (int i = 0; i < other.gateArrivals.length; i++) {
+			gateArrivals[i] += other.gateArrivals[i];
+			gateAdmissions[i] += other.gateAdmissions[i];
+			gateWaitMillis[i] += other.gateWaitMillis[i];
+			longestQueue[i] = Math.max(longestQueue[i], other.longestQueue[i]);
+		}
+		crowdTime += other.crowdTime;
+		for (int s = 0; s < splits.length; s++) {
+			splits[s] += other.splits[s];
+			splitSum[s] += other.splitSum[s];
+			splitSumSq[s] += other.splitSumSq[s];
+		}
+		return this;
+	}
+	
+	public long getRaces() { return races; }
+	
+	public long getWins(int team) { return wins[team]; }
+	
+	public long getNoWinner() { return noWinner; }
+	
+	public long getStalls() { return stalls; }
+	
+	public long getMeanRaceTime() { return simulatedTime / Math.max(1, races); }
+	
+	public long getMeanHandoffNanos() { return handoffNanos / Math.max(1, races); }
+	
+	public long getDeadlocksBroken() { return deadlocksBroken; }
+	
+	public double getMeanDetours() { return (double) detours / Math.max(1, races); }
+	
+	//mean race time at which the first legs dived
+	public double getMeanFirstDive() { return (double) firstDiveTime / Math.max(1, firstDives); }
+	
+	public long getTakeovers() { return takeovers; }
+	
+	public long getLateTakeovers() { return lateTakeovers; }
+	
+	//mean time a team waited for a late swimmer, in simulated milliseconds
+	public double getMeanLateness() { return (double) lateTime / Math.max(1, lateTakeovers); }
+	
+	public int getGates() { return gateArrivals.length; }
+	
+	//people arriving at a gate, and let in, per simulated second
+	public double gateArrivalRate(int gate) { return gateArrivals[gate] * 1000.0 / Math.max(1, crowdTime); }
+	
+	public double gateAdmissionRate(int gate) { return gateAdmissions[gate] * 1000.0 / Math.max(1, crowdTime); }
+	
+	//mean simulated milliseconds a person queued at a gate
+	public double meanGateWait(int gate) { return (double) gateWaitMillis[gate] / Math.max(1, gateAdmissions[gate]); }
+	
+	public int getLongestQueue(int gate) { return longestQueue[gate]; }
+	
+	public double winProbability(int team) {
+		return races == 0 ? 0 : (double) wins[team] / races;
+	}
+	
+	//95% Wilson interval for a team's win probability - {low, high}, sensible even for teams that never win
+	public double [] winInterval(int team) {
+		if (races == 0) return new double[] {0, 1};
+		double p = winProbability(team);
+		double z2 = z95*z95;
+		double centre = (p + z2/(2*races)) / (1 + z2/races);
+		double half = z95*Math.sqrt(p*(1-p)/races + z2/(4.0*races*races)) / (1 + z2/races);
+		return new double[] {Math.max(0, centre-half), Math.min(1, centre+half)};
+	}
+	
+	//legs swum with a stroke
+	public long getSplits(SwimStroke s) { return splits[s.ordinal()]; }
+	
+	//mean split time for a stroke, in simulated milliseconds
+	public double meanSplit(SwimStroke s) {
+		long n = splits[s.ordinal()];
+		return n == 0 ? 0 : splitSum[s.ordinal()] / n;
+	}
+	
+	//half-width of the 95% confidence interval for the mean split
+	public double splitMargin(SwimStroke s) {
+		long n = splits[s.ordinal()];
+		if (n < 2) return 0;
+		double mean = meanSplit(s);
+		double variance = Math.max(0, (splitSumSq[s.ordinal()] - n*mean*mean) / (n-1));
+		return z95 * Math.sqrt(variance / n);
+	}
+}
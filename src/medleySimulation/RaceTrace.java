@@ -0,0 +1,100 @@
+//Class recording a binary trace of a race: every move with how long the block took to get,
+//and every dive, touch and finish. Each swimmer writes to its own ring buffer with no locks,
+//so tracing does not change the timing it is measuring. Only swimmers are traced - spectators would
+//need a buffer each too. The buffers are merged and written through a memory-mapped file once the
+//swimmer threads are done - TraceReader turns the file into timelines.
+package medleySimulation;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class RaceTrace {
+	
+	//event types
+	static final int MOVE = 0; //moved onto a block - wait is how long the block took to get
+	static final int DIVE = 1;
+	static final int TOUCH = 2; //end of a leg
+	static final int FINISH = 3; //anchor finished the race
+	static final String [] EVENT_NAMES = {"move", "dive", "touch", "finish"};
+	
+	//file layout: header, then records of four longs
+	static final int MAGIC = 0x53575452; //"SWTR"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 24; //magic, version, records, dropped
+	static final int RECORD_LONGS = 4; //wall nanos, race clock time, wait nanos, type<<56 | id<<32 | x<<16 | y
+	
+	private final int capacity; //records per swimmer, a power of two
+	private final long startNanos = System.nanoTime(); //records are timed from here
+	private final Ring [] rings; //per swimmer ID, made when it first records
+	
+	//one swimmer's buffer - only that swimmer's thread writes it, and it is only read once the thread is done
+	private static class Ring {
+		final long [] words;
+		long count; //records ever written - the oldest are overwritten once it passes capacity
+		
+		Ring(int capacity) {
+			words = new long[capacity*RECORD_LONGS];
+		}
+	}
+	
+	//trace swimmers 0 to swimmers-1, keeping the last recordsPerSwimmer events of each
+	RaceTrace(int recordsPerSwimmer, int swimmers) {
+		capacity = Integer.highestOneBit(Math.max(16, recordsPerSwimmer)-1) << 1;
+		rings = new Ring[swimmers];
+	}
+	
+	//record an event on the swimmer's buffer - called on the swimmer's own thread; anyone else is not traced
+	public void record(int type, int id, int x, int y, long raceTime, long waitNanos) {
+		if (id<0 || id>=rings.length) return;
+		Ring r = rings[id];
+		if (r==null) r = rings[id] = new Ring(capacity);
+		int at = (int) (r.count & (capacity-1)) * RECORD_LONGS;
+		r.words[at] = System.nanoTime() - startNanos; //wall time since the trace began
+		r.words[at+1] = raceTime;
+		r.words[at+2] = waitNanos;
+		r.words[at+3] = ((long) type << 56) | ((long) id << 32) | ((x & 0xffffL) << 16) | (y & 0xffffL);
+		r.count++;
+	}
+	
+	//records overwritten because a swimmer's buffer was full
+	public long getDropped() {
+		long dropped = 0;
+		for (Ring r : rings) if (r!=null) dropped += Math.max(0, r.count-capacity);
+		return dropped;
+	}
+	
+	//merge the buffers in time order and write them out - call once the swimmer threads have finished
+	//returns the number of records written
+	public long write(String path) throws IOException {
+		int total = 0;
+		for (Ring r : rings) if (r!=null) total += (int) Math.min(r.count, capacity);
+		long [] merged = new long[total*RECORD_LONGS];
+		Integer [] order = new Integer[total];
+		int n = 0;
+		for (Ring r : rings) {
+			if (r==null) continue;
+			long first = Math.max(0, r.count-capacity);
+			for (long k = first; k < r.count; k++, n++) {
+				System.arraycopy(r.words, (int) (k & (capacity-1)) * RECORD_LONGS, merged, n*RECORD_LONGS, RECORD_LONGS);
+				order[n] = n;
+			}
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(merged[a*RECORD_LONGS], merged[b*RECORD_LONGS]));
+		
+		long size = HEADER_BYTES + (long) total*RECORD_LONGS*8;
+		try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.putInt(MAGIC).putInt(VERSION).putLong(total).putLong(getDropped());
+			for (Integer i : order) {
+				for (int w = 0; w < RECORD_LONGS; w++) out.putLong(merged[i*RECORD_LONGS+w]);
+			}
+			out.force();
+		}
+		return total;
+	}
+}
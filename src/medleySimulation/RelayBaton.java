@@ -0,0 +1,105 @@
+//Class to hand the relay on from one swimmer in a team to the next.
+//Each leg may only walk in once the previous swimmer has dived (so the starting block is free),
+//and may only dive once the previous swimmer has touched the wall.
+package medleySimulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class RelayBaton {
+	
+	private final RaceClock clock;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition moved = lock.newCondition();
+	private int stage; //2*leg+1 once a leg has dived, 2*leg+2 once it has touched
+	private long touchTime; //System.nanoTime() of the last touch
+	private final List<Waiter> waiting = new ArrayList<Waiter>(); //swimmers counted idle on the race clock
+	
+	//handoff latency: from a touch to the next swimmer, already waiting on the block, being released to dive
+	//a swimmer who gets to the block after the touch is late, not slow to hand off - the ledger counts those
+	private final LongAdder handoffs = new LongAdder();
+	private final LongAdder handoffNanos = new LongAdder();
+	
+	private static class Waiter {
+		final int stage; //stage it is waiting for
+		Waiter(int stage) { this.stage=stage; }
+	}
+	
+	RelayBaton(RaceClock clock) {
+		this.clock=clock;
+	}
+	
+	//swimmer for this leg waits until it may go to the starting block
+	public void awaitBlock(int leg) throws InterruptedException {
+		awaitStage(2*leg-1);
+	}
+	
+	//swimmer for this leg waits on the block until the previous swimmer touches
+	public void awaitTouch(int leg) throws InterruptedException {
+		if (leg==0) return;
+		if (!awaitStage(2*leg)) return; //touched before this swimmer got there
+		long latency = System.nanoTime() - touchTime;
+		handoffs.increment();
+		handoffNanos.add(latency);
+	}
+	
+	//this leg's swimmer is in the water - the block is free for the next one
+	public void dived(int leg) {
+		advance(2*leg+1);
+	}
+	
+	//this leg's swimmer has touched - the next one can go
+	public void touched(int leg) {
+		advance(2*leg+2);
+	}
+	
+	//returns true if the swimmer had to wait
+	private boolean awaitStage(int needed) throws InterruptedException {
+		lock.lock();
+		try {
+			if (stage>=needed) return false;
+			Waiter me = new Waiter(needed);
+			waiting.add(me);
+			clock.idle();
+			try {
+				while (stage<needed) moved.await();
+			} catch (InterruptedException e) {
+				if (waiting.remove(me)) clock.busy(); //not counted back in yet
+				throw e;
+			}
+		} finally {
+			lock.unlock();
+		}
+		clock.resume(); //outside the lock - may wait for a turn
+		return true;
+	}
+	
+	private void advance(int to) {
+		lock.lock();
+		try {
+			stage = to;
+			if (to%2==0) touchTime = System.nanoTime();
+			for (int i = waiting.size()-1; i >= 0; i--) {
+				if (waiting.get(i).stage<=to) {
+					waiting.remove(i);
+					clock.busy(); //count it back in before it runs
+				}
+			}
+			moved.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	//number of handoffs so far - swimmers who were waiting when the previous leg touched
+	public long getHandoffs() { return handoffs.sum(); }
+	
+	//mean time from a touch to the next swimmer being released, in nanoseconds
+	public double getMeanHandoffNanos() {
+		long n = handoffs.sum();
+		return n==0 ? 0 : (double) handoffNanos.sum()/n;
+	}
+}
@@ -0,0 +1,128 @@
+// Class recording the full results of a race: when every swimmer dived in and touched,
+// and the order all the teams finished in.
+// Append-only: each swimmer writes only its own slots, and places are handed out by a
+// single atomic counter, so finishers never wait on each other.
+package medleySimulation;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class ResultsLedger {
+	
+	private static final int none = -1; //slot not written yet
+	private final int teamSize; //swimmers per team - swimmer IDs run team by team
+	
+	//per swimmer, indexed by ID
+	private final AtomicLongArray legStart; //race clock time of the dive
+	private final AtomicLongArray legFinish; //race clock time of the touch
+	private final AtomicIntegerArray stroke; //SwimStroke ordinal
+	
+	//per place, 0 is first
+	private final AtomicInteger nextPlace = new AtomicInteger();
+	private final AtomicIntegerArray teamAtPlace;
+	private final AtomicIntegerArray swimmerAtPlace; //who touched for the team
+	private final AtomicLongArray timeAtPlace;
+	
+	ResultsLedger(int numTeams, int teamSize) {
+		this.teamSize=teamSize;
+		int numSwimmers=numTeams*teamSize;
+		legStart = filled(numSwimmers);
+		legFinish = filled(numSwimmers);
+		stroke = new AtomicIntegerArray(numSwimmers);
+		teamAtPlace = new AtomicIntegerArray(numTeams);
+		swimmerAtPlace = new AtomicIntegerArray(numTeams);
+		timeAtPlace = new AtomicLongArray(numTeams);
+		for (int i = 0; i < numTeams; i++) teamAtPlace.set(i, none);
+	}
+	
+	private static AtomicLongArray filled(int n) {
+		AtomicLongArray a = new AtomicLongArray(n);
+		for (int i = 0; i < n; i++) a.set(i, none);
+		return a;
+	}
+	
+	//a swimmer dives in and starts their leg
+	public void recordDive(int swimmer, SwimStroke s, long time) {
+		stroke.set(swimmer, s.ordinal());
+		legStart.set(swimmer, time);
+	}
+	
+	//a swimmer touches the wall at the end of their leg
+	public void recordTouch(int swimmer, long time) {
+		legFinish.set(swimmer, time);
+	}
+	
+	//a team finishes - returns its place, 1 for the winner
+	public int recordTeamFinish(int team, int swimmer, long time) {
+		int place = nextPlace.getAndIncrement();
+		swimmerAtPlace.set(place, swimmer);
+		timeAtPlace.set(place, time);
+		teamAtPlace.set(place, team); //written last - marks the place as complete
+		return place+1;
+	}
+	
+	//number of teams that have finished
+	public int finished() {
+		return Math.min(nextPlace.get(), teamAtPlace.length());
+	}
+	
+	//team at a finished place (0 based) - waits out a finisher still writing its place
+	private int awaitPlace(int p) {
+		int team;
+		while ((team = teamAtPlace.get(p)) == none) Thread.onSpinWait(); //only between two stores
+		return team;
+	}
+	
+	//teams in order for the first n places
+	public int [] placings(int n) {
+		int [] order = new int[n];
+		for (int p = 0; p < n; p++) order[p] = awaitPlace(p);
+		return order;
+	}
+	
+	//these are for places that have finished, 1 for the winner
+	public int teamAtPlace(int place) { return awaitPlace(place-1); }
+	
+	public int swimmerAtPlace(int place) { awaitPlace(place-1); return swimmerAtPlace.get(place-1); }
+	
+	public long timeAtPlace(int place) { awaitPlace(place-1); return timeAtPlace.get(place-1); }
+	
+	public long getLegStart(int swimmer) { return legStart.get(swimmer); }
+	
+	public long getLegFinish(int swimmer) { return legFinish.get(swimmer); }
+	
+	//leg time, or -1 if the leg is not complete
+	public long getSplit(int swimmer) {
+		long s = legStart.get(swimmer), f = legFinish.get(swimmer);
+		return (s == none || f == none) ? none : f - s;
+	}
+	
+	//place of a team, or -1 if it has not finished
+	public int placeOf(int team) {
+		for (int p = 0; p < finished(); p++) if (awaitPlace(p) == team) return p+1;
+		return none;
+	}
+	
+	//CSV header matching writeCsv
+	public static void writeCsvHeader(PrintStream out) {
+		out.println("race,swimmer,team,stroke,legStart,legFinish,split,teamPlace");
+	}
+	
+	//one CSV row per swimmer - race labels the rows when many ledgers go to one file
+	public void writeCsv(PrintStream out, int race) {
+		StringBuilder sb = new StringBuilder();
+		SwimStroke [] strokes = SwimStroke.values();
+		for (int i = 0; i < legStart.length(); i++) {
+			int team = i / teamSize;
+			sb.append(race).append(',').append(i).append(',').append(team).append(',')
+			  .append(legStart.get(i) == none ? "" : strokes[stroke.get(i)].name()).append(',')
+			  .append(legStart.get(i)).append(',').append(legFinish.get(i)).append(',')
+			  .append(getSplit(i)).append(',').append(placeOf(team)).append('\n');
+		}
+		out.print(sb); //one write per race
+	}
+}
@@ -0,0 +1,191 @@
+//Class holding the settings for a simulation: stadium size, lanes, teams, display and batch runs.
+//Settings come from an optional properties file (--config=file) and then --key=value arguments,
+//so the same keys work in both places.
+package medleySimulation;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.Random;
+
+public class SimulationConfig {
+
+	//stadium
+	int numTeams = 10; //one lane per team
+	int teamSize = 4; //legs in the relay, 1 to 4 - the medley strokes are used in order
+	int gridX = 50; // number of x grid points - grown if the lanes need more
+	int gridY = 120; // number of y grid points
+	int laneWidth = 5; //grid columns per lane
+	int startOffset = 20; //starting blocks are this many rows above the bottom of the grid
+	int entranceOffset = 5; //entrance is this many rows above the bottom of the grid
+	boolean compactGrid = false; //occupancy in flat arrays, one per lane region, rather than a GridBlock per block
+	boolean deckRoutes = true; //walk the deck by route tables, stepping round occupied blocks, rather than greedily
+	int laneWindow = 8; //blocks a swimmer reserves ahead in its lane at once - 1 for block by block
+	boolean watchdog = true; //find swimmers waiting on each other for good, and make one step aside
+	int stallMillis = 2000; //report a swimmer in the animation waiting this long for a block
+	
+	//crowd
+	int spectators = 0; //people in the stands, on top of the swimmers
+	int standColumns = 0; //columns of stands to the right of the pool - grown to seat the spectators
+	int gates = 1; //entrances along the concourse, each letting people in one at a time in arrival order
+	int visitMillis = 30000; //about how long a spectator stays in their seat
+	int crowdArrivalMillis = 20000; //spectators turn up at random within this long of the start
+
+	//display
+	int frameX = 300; // frame width
+	int frameY = 600;  // frame height
+	int targetFps = 30; // how often the stadium view is redrawn
+
+	//threads and batch runs
+	ThreadMode threadMode = ThreadMode.PLATFORM; // platform or virtual threads for teams and swimmers
+	boolean headless = false; //run a batch of races with no display
+	boolean tickEngine = false; //headless races as one state machine per race on the workers, not a thread per swimmer
+	int races = 1000; //races in a headless batch
+	int workers = Runtime.getRuntime().availableProcessors(); //races run at once
+	String results = null; //CSV file for the full results of a batch
+	Long seed = null; //set for repeatable races: all randomness comes from it, and headless races are scheduled in a fixed order
+	String log = null; //file to write the move log of the first headless race to
+	String trace = null; //file for a binary trace of the first headless race, or of the animation when it quits
+	int traceBuffer = 4096; //trace records kept per swimmer - older ones are dropped
+	AsyncLog.Level logLevel = AsyncLog.Level.INFO; //debug shows every swimmer's progress
+	boolean metrics = false; //count moves, waits, finishes and frames, shown through JMX
+	int metricsPort = 0; //also serve the metrics as Prometheus text on localhost at this port
+
+	static final String usage = "usage: MedleySimulation [--config=file.properties] [--headless] [--virtual] [--key=value ...]\n"
+			+ "keys: teams teamSize gridX gridY laneWidth startOffset entranceOffset grid routes laneWindow watchdog stallMillis spectators standColumns gates visitMillis crowdArrival frameX frameY fps threads engine races workers results seed log trace traceBuffer logLevel metrics metricsPort";
+
+	//settings from the command line, and the properties file it names
+	public static SimulationConfig load(String[] args) throws IOException {
+		SimulationConfig c = new SimulationConfig();
+		for (String a : args) { //file first, so the command line overrides it
+			if (a.startsWith("--config=")) c.loadFile(a.substring("--config=".length()));
+		}
+		for (String a : args) {
+			if (a.startsWith("--config=")) continue;
+			if (a.equals("--headless")) c.headless = true;
+			else if (a.equals("--virtual")) c.threadMode = ThreadMode.VIRTUAL;
+			else if (a.startsWith("--") && a.indexOf('=') > 2) c.set(a.substring(2, a.indexOf('=')), a.substring(a.indexOf('=')+1));
+			else throw new IllegalArgumentException("unknown argument " + a);
+		}
+		c.validate();
+		return c;
+	}
+
+	//settings from a properties file
+	public void loadFile(String path) throws IOException {
+		Properties p = new Properties();
+		try (InputStream in = new FileInputStream(path)) {
+			p.load(in);
+		}
+		for (String key : p.stringPropertyNames()) set(key, p.getProperty(key));
+	}
+
+	//change one setting
+	public void set(String key, String value) {
+		value = value.trim();
+		try {
+			switch (key) {
+			case "teams": numTeams = Integer.parseInt(value); break;
+			case "teamSize": teamSize = Integer.parseInt(value); break;
+			case "gridX": gridX = Integer.parseInt(value); break;
+			case "gridY": gridY = Integer.parseInt(value); break;
+			case "laneWidth": laneWidth = Integer.parseInt(value); break;
+			case "startOffset": startOffset = Integer.parseInt(value); break;
+			case "entranceOffset": entranceOffset = Integer.parseInt(value); break;
+			case "grid":
+				if (!value.equals("objects") && !value.equals("compact")) throw new IllegalArgumentException("grid must be objects or compact");
+				compactGrid = value.equals("compact");
+				break;
+			case "routes":
+				if (!value.equals("tables") && !value.equals("greedy")) throw new IllegalArgumentException("routes must be tables or greedy");
+				deckRoutes = value.equals("tables");
+				break;
+			case "laneWindow": laneWindow = Integer.parseInt(value); break;
+			case "watchdog": watchdog = Boolean.parseBoolean(value); break;
+			case "stallMillis": stallMillis = Integer.parseInt(value); break;
+			case "spectators": spectators = Integer.parseInt(value); break;
+			case "standColumns": standColumns = Integer.parseInt(value); break;
+			case "gates": gates = Integer.parseInt(value); break;
+			case "visitMillis": visitMillis = Integer.parseInt(value); break;
+			case "crowdArrival": crowdArrivalMillis = Integer.parseInt(value); break;
+			case "frameX": frameX = Integer.parseInt(value); break;
+			case "frameY": frameY = Integer.parseInt(value); break;
+			case "fps": targetFps = Integer.parseInt(value); break;
+			case "threads": threadMode = ThreadMode.parse(value); break;
+			case "headless": headless = Boolean.parseBoolean(value); break;
+			case "engine":
+				if (!value.equals("threads") && !value.equals("ticks")) throw new IllegalArgumentException("engine must be threads or ticks");
+				tickEngine = value.equals("ticks");
+				break;
+			case "races": races = Integer.parseInt(value); break;
+			case "workers": workers = Integer.parseInt(value); break;
+			case "results": results = value; break;
+			case "seed": seed = Long.parseLong(value); break;
+			case "log": log = value; break;
+			case "trace": trace = value; break;
+			case "traceBuffer": traceBuffer = Integer.parseInt(value); break;
+			case "logLevel": logLevel = AsyncLog.Level.parse(value); break;
+			case "metrics": metrics = Boolean.parseBoolean(value); break;
+			case "metricsPort": metricsPort = Integer.parseInt(value); metrics = true; break;
+			default: throw new IllegalArgumentException("unknown setting " + key);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad value for " + key + ": " + value);
+		}
+	}
+
+	//check the settings make a usable stadium, growing the grid to fit the lanes
+	public void validate() {
+		if (numTeams < 1) throw new IllegalArgumentException("need at least one team");
+		if (teamSize < 1 || teamSize > Swimmer.SwimStroke.values().length)
+			throw new IllegalArgumentException("teamSize must be 1 to " + Swimmer.SwimStroke.values().length);
+		if (laneWidth < 3) throw new IllegalArgumentException("laneWidth must be at least 3"); //block, swimmer and exit columns
+		if (entranceOffset <= teamSize) throw new IllegalArgumentException("entranceOffset must be above the benches (more than teamSize)");
+		if (startOffset <= entranceOffset) throw new IllegalArgumentException("startOffset must be above the entrance");
+		if (gridY < startOffset + 3) throw new IllegalArgumentException("gridY too small for startOffset"); //room to dive and swim
+		if (races < 0 || workers < 1 || targetFps < 1) throw new IllegalArgumentException("races, workers and fps must be positive");
+		if (laneWindow < 1) throw new IllegalArgumentException("laneWindow must be positive");
+		if (stallMillis < 1) throw new IllegalArgumentException("stallMillis must be positive");
+		if (traceBuffer < 1) throw new IllegalArgumentException("traceBuffer must be positive");
+		if (metricsPort < 0 || metricsPort > 65535) throw new IllegalArgumentException("metricsPort must be 0 to 65535");
+		if (tickEngine && trace != null) throw new IllegalArgumentException("trace needs engine=threads - there are no block waits to time with ticks");
+		if (spectators < 0 || standColumns < 0 || visitMillis < 0 || crowdArrivalMillis < 0) throw new IllegalArgumentException("spectators, standColumns, visitMillis and crowdArrival must not be negative");
+		if (gates < 1) throw new IllegalArgumentException("need at least one gate");
+		if (tickEngine && (spectators > 0 || gates > 1)) throw new IllegalArgumentException("spectators and gates need engine=threads - ticks only move swimmers");
+		if (spectators + numTeams * teamSize > CompactGrid.maxOwners) throw new IllegalArgumentException("too many people: at most " + CompactGrid.maxOwners);
+		standColumns = Math.max(standColumns, Stands.columnsFor(spectators, gridY));
+		if (standColumns > 0 && standColumns % 2 == 0) standColumns++; //aisle, seat, aisle, ... aisle
+		gridX = Math.max(gridX, numTeams * laneWidth + standColumns);
+		int room = (gridX - standColumns + laneWidth - 1) / laneWidth + (standColumns + 3) / 4; //lane lines and aisles in on the concourse
+		if (gates > room) throw new IllegalArgumentException("room for at most " + room + " gates");
+	}
+
+	//start collecting metrics if asked for - returns null if they are off
+	public RaceMetrics installMetrics() throws IOException {
+		if (!metrics) return null;
+		RaceMetrics m = RaceMetrics.install(metricsPort);
+		if (metricsPort > 0) System.out.println("metrics on http://localhost:" + metricsPort + "/metrics");
+		return m;
+	}
+	
+	//randomness for one race of a batch - the same every time if there is a seed
+	public Random random(int race) {
+		return seed == null ? new Random() : new Random(seed + race * 0x9E3779B97F4A7C15L);
+	}
+	
+	//note the settings a replay needs to rebuild the stadium
+	public void describe(RaceLog log) {
+		log.setting("gridX", gridX);
+		log.setting("gridY", gridY);
+		log.setting("teams", numTeams);
+		log.setting("teamSize", teamSize);
+		log.setting("laneWidth", laneWidth);
+		log.setting("startOffset", startOffset);
+		log.setting("entranceOffset", entranceOffset);
+		log.setting("standColumns", standColumns);
+		log.setting("gates", gates);
+		log.setting("spectators", spectators);
+		if (seed != null) log.setting("seed", seed);
+	}
+}
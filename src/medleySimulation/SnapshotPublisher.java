@@ -0,0 +1,97 @@
+//Class publishing snapshots of everyone's position at a fixed rate for the renderer.
+//Two snapshots are reused in turn: the publisher fills the back one while the renderer reads the front.
+//The renderer pins the front one while it paints, and the publisher skips a tick rather than overwrite it.
+//Blocks that changed between snapshots are marked dirty, so only they are repainted.
+package medleySimulation;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SnapshotPublisher implements Runnable {
+	
+	private final PeopleLocation [] people;
+	private final StadiumSnapshot [] buffers = new StadiumSnapshot[2];
+	private volatile StadiumSnapshot front; //the latest complete snapshot
+	private final AtomicReference<StadiumSnapshot> reading = new AtomicReference<StadiumSnapshot>(); //pinned by the renderer
+	private final long period; //nanoseconds between snapshots
+	private volatile DirtyRegions dirty; //told about blocks that changed, if someone is drawing
+	
+	//publication cost, written only by the publisher
+	private volatile long published;
+	private volatile long skipped; //ticks missed because the renderer was still on the back buffer
+	private volatile double publishMicros; //smoothed time to take a snapshot
+	
+	SnapshotPublisher(PeopleLocation [] people, int perSecond) {
+		this.people=people;
+		period = 1000000000L/Math.max(1, perSecond);
+		buffers[0] = new StadiumSnapshot(people.length);
+		buffers[1] = new StadiumSnapshot(people.length);
+		buffers[0].fill(people, 0);
+		front = buffers[0];
+	}
+	
+	public void setDirtyRegions(DirtyRegions d) { dirty = d; }
+	
+	//take a snapshot now - returns false if the renderer still holds the back buffer
+	public boolean publish() {
+		long start = System.nanoTime();
+		StadiumSnapshot old = front;
+		StadiumSnapshot back = old == buffers[0] ? buffers[1] : buffers[0];
+		if (reading.get() == back) { //renderer got it before the last flip and is still drawing
+			skipped++;
+			return false;
+		}
+		back.fill(people, published+1);
+		front = back;
+		DirtyRegions d = dirty;
+		if (d != null) { //both the old and new block of anyone who moved
+			for (int i = 0; i < back.size(); i++) {
+				if (back.getCell(i) == old.getCell(i)) continue;
+				if (old.inPool(i)) d.mark(old.getX(i), old.getY(i));
+				if (back.inPool(i)) d.mark(back.getX(i), back.getY(i));
+			}
+		}
+		published++;
+		publishMicros = 0.9*publishMicros + 0.1*(System.nanoTime()-start)/1e3;
+		return true;
+	}
+	
+	//the latest snapshot, pinned until release() - for a single renderer thread
+	public StadiumSnapshot acquire() {
+		StadiumSnapshot s;
+		do {
+			s = front;
+			reading.set(s);
+		} while (front != s); //flipped while pinning - it might be refilled, so take the newer one
+		return s;
+	}
+	
+	//the renderer has finished with its snapshot
+	public void release() {
+		reading.set(null);
+	}
+	
+	public long getPublished() { return published; }
+	
+	public long getSkipped() { return skipped; }
+	
+	public double getPublishMicros() { return publishMicros; }
+	
+	//publish at the fixed rate until interrupted
+	public void run() {
+		long next = System.nanoTime();
+		while (true) {
+			next += period;
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait/1000000, (int) (wait%1000000));
+				} catch (InterruptedException e) {
+					return;
+				}
+			} else {
+				next = System.nanoTime(); //running late - don't try to catch up
+			}
+			publish();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+//Class for a spectator: comes to watch, queues at the gate nearest their seat, walks along the
+//concourse and up or down an aisle in to the seat, watches for a while, and leaves by the aisle
+//on the other side of the seat and the row below the concourse to the exit beside a gate.
+//Spectators take blocks like everyone else, so a big crowd gets in the swimmers' way on the deck.
+package medleySimulation;
+
+import java.util.Random;
+
+public class Spectator implements Runnable {
+
+	private final StadiumGrid stadium; //shared with the swimmers
+	private final RaceClock clock;
+	private final PeopleLocation myLocation;
+	private final int ID;
+	private final int seatX, seatY;
+	private final int aisleIn, aisleOut;
+	private final Gate gate; //the way in
+	private final Gate exit; //leaving beside this gate
+	private final int movingSpeed; //milliseconds a step
+	private final int arrival; //milliseconds into the race
+	private final int visit; //milliseconds in the seat
+	private GridBlock currentBlock;
+
+	Spectator(int ID, int seat, StadiumGrid stadium, PeopleLocation loc, int arrivalMillis, int visitMillis, Random rand) {
+		this.ID=ID;
+		this.stadium=stadium;
+		this.myLocation=loc;
+		clock=stadium.getClock();
+		clock.join(); //counted in the race from now, so the thread must be started
+		Stands stands = stadium.getStands();
+		seatX=stands.seatX(seat);
+		seatY=stands.seatY(seat);
+		aisleIn=stands.aisleIn(seatX);
+		aisleOut=stands.aisleOut(seatX);
+		gate=stadium.nearestGate(aisleIn, false);
+		exit=stadium.nearestGate(aisleOut, false); //so everyone out of an aisle heads the same way
+		movingSpeed=rand.nextInt(10)+20; //brisker than a swimmer on the deck
+		arrival=rand.nextInt(Math.max(1, arrivalMillis));
+		visit=visitMillis/2+rand.nextInt(Math.max(1, visitMillis));
+	}
+
+	public int getID() { return ID; }
+
+	//walk to (i,j), a block at a time
+	private void walkTo(int i, int j) throws InterruptedException {
+		while (currentBlock.getX()!=i || currentBlock.getY()!=j) {
+			clock.sleep(movingSpeed);
+			currentBlock=stadium.moveTowards(currentBlock,i,j,myLocation);
+		}
+	}
+
+	public void run() {
+		try {
+			clock.begin(ID);
+			clock.sleep(arrival);
+			myLocation.setArrived();
+			currentBlock=stadium.enterStadium(myLocation,gate);
+			clock.sleep(20); //show a ticket
+			int concourse=currentBlock.getY();
+			walkTo(aisleIn,concourse);
+			walkTo(aisleIn,seatY);
+			walkTo(seatX,seatY);
+			clock.sleep(visit); //watch the race
+			walkTo(aisleOut,seatY);
+			walkTo(aisleOut,concourse+1);
+			walkTo(exit.getBlock().getX(),concourse+1);
+			stadium.leaveStadium(currentBlock,myLocation);
+		} catch (InterruptedException e) { //race stopped
+		} finally {
+			clock.leave();
+		}
+	}
+}
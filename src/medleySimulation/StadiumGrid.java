@@ -3,39 +3,111 @@
 
 package medleySimulation;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
 //This class represents the club as a grid of GridBlocks
 public class StadiumGrid {
-	private GridBlock [][] Blocks;
+	private GridBlock [][] Blocks; //a GridBlock object per block - null if compact
+	private final CompactGrid compact; //flat occupancy arrays per region instead of Blocks, for very large grids
 	private final int x; //maximum x value
 	private final int y; //maximum y value
-	public  static int start_y; // where the starting blocks are 
+	private final int poolX; //columns of pool and deck - the stands, if any, are to the right
+	private final int start_y; // where the starting blocks are 
+	private final RaceClock clock; // the clock this race runs on
+	private volatile RaceLog log; // every move, if someone wants them
+	private volatile RaceTrace trace; // binary trace of moves and block waits, if someone wants it
+	private static final AsyncLog messages = AsyncLog.OUT; // warnings, printed off the swimmers' threads
+	
+	private final int laneWidth; //grid columns per lane
+	private DeckRouter router; //route tables for walking on the deck - null to walk greedily
+	private final LongAdder detours = new LongAdder(); //steps round an occupied block
+	private StallWatchdog watchdog; //finds swimmers waiting on each other, if set
+	private int laneWindow = 8; //blocks a swimmer reserves ahead in its lane, and releases behind, at once
+	private static final int backOff = 50; //milliseconds a swimmer that stepped aside waits, so the others can use the gap
 	
-	private GridBlock entrance; //hard coded entrance
+	private GridBlock entrance; //entrance, near the bottom left
+	private final Gate [] gates; //entrances along the concourse, gate 0 is the entrance above
+	private final Stands stands; //seats for spectators - null if there are none
 	
-	private GridBlock startingBlocks[]; //hard coded starting blocks
+	private GridBlock startingBlocks[]; //one starting block per lane
 	private final static int minX =5;//minimum x dimension
 	private final static int minY =5;//minimum y dimension
 	
 	
 	StadiumGrid(int x, int y, int nTeams ,FinishCounter c) throws InterruptedException {
+		this(x,y,nTeams,c,new RaceClock());
+	}
+	
+	StadiumGrid(int x, int y, int nTeams ,FinishCounter c, RaceClock clock) throws InterruptedException {
+		this(x,y,nTeams,5,20,5,false,clock);
+	}
+	
+	StadiumGrid(SimulationConfig config, RaceClock clock) throws InterruptedException {
+		this(config.gridX,config.gridY,config.numTeams,config.laneWidth,config.startOffset,config.entranceOffset,config.standColumns,config.gates,config.compactGrid,clock);
+		if (!config.deckRoutes) router = null;
+		else if (router==null) messages.warn("deck of "+poolX+"x"+(y-start_y)+" blocks too large for route tables - walking greedily");
+		laneWindow = config.laneWindow;
+		if (config.watchdog) {
+			watchdog = new StallWatchdog(clock);
+			clock.setStallHandler(watchdog::resolve); //headless clocks ask it before giving up on a race
+		}
+	}
+	
+	//lanes every laneWidth columns, starting blocks startOffset rows and the entrance entranceOffset rows above the bottom
+	StadiumGrid(int x, int y, int nTeams, int laneWidth, int startOffset, int entranceOffset, boolean compact, RaceClock clock) throws InterruptedException {
+		this(x,y,nTeams,laneWidth,startOffset,entranceOffset,0,1,compact,clock);
+	}
+	
+	//as above, with standColumns of stands to the right of the pool and nGates entrances along the concourse
+	StadiumGrid(int x, int y, int nTeams, int laneWidth, int startOffset, int entranceOffset, int standColumns, int nGates, boolean compact, RaceClock clock) throws InterruptedException {
 		if (x<minX) x=minX; //minimum x
 		if (y<minY) y=minY; //minimum x
 		this.x=x;
 		this.y=y;
-		start_y=y-20; //start row hard-coded
-		Blocks = new GridBlock[x][y]; //set up the array grid
-		startingBlocks= new GridBlock[nTeams];
+		this.clock=clock;
+		this.laneWidth=laneWidth;
+		poolX=x-standColumns;
+		if (poolX<laneWidth) throw new IllegalArgumentException("no room for the pool beside "+standColumns+" stand columns");
+		start_y=y-startOffset; //row of the starting blocks
+		this.compact = compact ? new CompactGrid(x,y,start_y,laneWidth,poolX,0,y-entranceOffset) : null;
+		startingBlocks= new GridBlock[(poolX+laneWidth-2)/laneWidth]; //columns 1, 1+laneWidth, ... below poolX
+		if (nTeams>startingBlocks.length) throw new IllegalArgumentException(nTeams+" teams but only "+startingBlocks.length+" lanes");
 		this.initGrid();
-		entrance=Blocks[0][y-5];
+		stands = standColumns>0 ? new Stands(poolX,standColumns,y,y-entranceOffset) : null;
+		gates = placeGates(nGates, y-entranceOffset);
+		entrance=gates[0].getBlock();
+		if (DeckRouter.fits(poolX,y,start_y)) router = DeckRouter.forDeck(poolX,y,start_y,laneWidth); //tables shared with earlier races on the same deck
 		}
 	
+	//gates spread evenly along the concourse, from the bottom left - on the lane lines beside the pool, and at the foot of aisles in in the stands
+	private Gate [] placeGates(int n, int row) {
+		List<Integer> columns = new ArrayList<Integer>(); //where a gate can go
+		for (int i=0;i<poolX;i+=laneWidth) columns.add(i);
+		for (int i=poolX;i<x;i+=4) columns.add(i);
+		if (n<1 || n>columns.size()) throw new IllegalArgumentException("room for 1 to "+columns.size()+" gates, not "+n);
+		Gate [] placed = new Gate[n];
+		for (int g=0;g<n;g++) {
+			int c = n==1 ? 0 : (int) Math.round((double) g*(columns.size()-1)/(n-1));
+			placed[g] = new Gate(g, whichBlock(columns.get(c),row));
+		}
+		return placed;
+	}
+	
 	//initialise the grid, creating all the GridBlocks, marking the starting blocks
 	private  void initGrid() throws InterruptedException {
 		int startBIndex=0;
+		if (compact!=null) { //no objects to create, just the starting blocks to find
+			for (int i=1;i<poolX;i+=laneWidth) startingBlocks[startBIndex++] = compact.block(i,start_y);
+			return;
+		}
+		Blocks = new GridBlock[x][y]; //set up the array grid
 		for (int i=0;i<x;i++) {
 			for (int j=0;j<y;j++) {
 				boolean start_block=false;
-				if ((i%5==1)&&(j==start_y)) {
+				if ((i%laneWidth==1)&&(j==start_y)&&(i<poolX)) {
 					start_block=true;
 				} 		
 				Blocks[i][j]=new GridBlock(i,j,start_block);
@@ -50,6 +122,62 @@ public class StadiumGrid {
 	public  int getMaxX() { return x;}
 	
 	public int getMaxY() { return y;}
+	
+	public int getStartY() { return start_y;}
+	
+	public int getLaneWidth() { return laneWidth;}
+	
+	public int getPoolX() { return poolX;}
+	
+	public Gate [] getGates() { return gates;}
+	
+	public Stands getStands() { return stands;}
+	
+	public RaceClock getClock() { return clock;}
+	
+	//record every move from now on
+	public void setLog(RaceLog log) { this.log = log;}
+	
+	//publish snapshots of where these people are, perSecond times a second, on a background thread
+	public SnapshotPublisher publishSnapshots(PeopleLocation [] people, int perSecond) {
+		SnapshotPublisher p = new SnapshotPublisher(people, perSecond);
+		Thread t = new Thread(p, "snapshots");
+		t.setDaemon(true);
+		t.start();
+		return p;
+	}
+	
+	//look for deadlocks every period milliseconds on a background thread, and report waits longer than stallMillis
+	//headless races need no thread - their clock asks the watchdog when everyone is blocked
+	public void watchStalls(long period, long stallMillis) {
+		if (watchdog!=null) watchdog.start(period, stallMillis);
+	}
+	
+	//trace every move, block wait and finish from now on
+	public void setTrace(RaceTrace trace) { this.trace = trace;}
+	
+	//a person has moved onto a block, after waiting since waitStart (nanoTime, 0 if nobody is timing) to get it
+	private void logMove(PeopleLocation who, GridBlock b, long waitStart) {
+		RaceLog l = log;
+		if (l!=null) l.move(clock.now(), who.getID(), b.getX(), b.getY());
+		if (waitStart==0) return;
+		long waited = System.nanoTime()-waitStart;
+		RaceTrace t = trace;
+		if (t!=null) t.record(RaceTrace.MOVE, who.getID(), b.getX(), b.getY(), clock.now(), waited);
+		RaceMetrics m = RaceMetrics.get();
+		if (m!=null) m.moved(waited);
+	}
+	
+	//when a wait for a block starts, if the trace or metrics are timing it
+	long waitStart() {
+		return (trace!=null || RaceMetrics.get()!=null) ? System.nanoTime() : 0;
+	}
+	
+	//a swimmer has dived, touched or finished - see RaceTrace for the events
+	public void mark(int event, int id, GridBlock where) {
+		RaceTrace t = trace;
+		if (t!=null) t.record(event, id, where.getX(), where.getY(), clock.now(), 0);
+	}
 
 	public GridBlock whereEntrance() {  return entrance; }
 
@@ -68,11 +196,35 @@ public class StadiumGrid {
 	
 	//a person enters the stadium
 	public GridBlock enterStadium(PeopleLocation myLocation) throws InterruptedException  {
-				while((entrance.get(myLocation.getID()))) {} //wait at entrace until entrance is free - spinning, not good
-				myLocation.setLocation(entrance);
+				return enterStadium(myLocation, gates[0]);
+	}
+	
+	//a person enters the stadium through a gate, in turn with everyone else queueing there
+	public GridBlock enterStadium(PeopleLocation myLocation, Gate gate) throws InterruptedException  {
+				long waited = waitStart();
+				GridBlock in = gate.admit(myLocation.getID(),clock,watchdog);
+				myLocation.setLocation(in);
+				logMove(myLocation, in, waited);
 				myLocation.setInStadium(true);
-				return entrance;
-			
+				return in;
+	}
+	
+	//the gate nearest column i - only those beside the pool if poolSide, as swimmers have no business in the stands
+	public Gate nearestGate(int i, boolean poolSide) {
+		Gate best = gates[0];
+		for (Gate g : gates) {
+			if (poolSide && g.getBlock().getX()>=poolX) continue;
+			if (Math.abs(g.getBlock().getX()-i)<Math.abs(best.getBlock().getX()-i)) best = g;
+		}
+		return best;
+	}
+	
+	//a person leaves the stadium from the block they are on - the exit beside a gate
+	public void leaveStadium(GridBlock currentBlock, PeopleLocation myLocation) {
+		myLocation.setInStadium(false);
+		RaceLog l = log;
+		if (l!=null) l.left(clock.now(), myLocation.getID());
+		currentBlock.release(clock);
 	}
 	
 	//returns starting block for a team (the lane)
@@ -94,7 +246,7 @@ public class StadiumGrid {
 		}
 		//restrict i and j to grid
 		if (!inStadiumArea(add_x+c_x,add_y+c_y)) {
-			System.out.println("Invalid move");
+			messages.warn("Invalid move");
 			//Invalid move to outside  - ignore
 			return currentBlock;
 		}
@@ -105,47 +257,153 @@ public class StadiumGrid {
 		else 
 			newBlock= whichBlock(add_x+c_x,add_y+c_y);//try diagonal or y
 		
-		
-			while((!newBlock.get(myLocation.getID()))) {} //wait until block is free - but spinning is bad
-			myLocation.setLocation(newBlock);		
-			currentBlock.release(); //must release current block
-			return newBlock;
-		
-		
+		long waited = waitStart();
+		GridBlock got = take(currentBlock, newBlock, myLocation.getID(), true); //wait until block is handed over
+		myLocation.setLocation(got);
+		logMove(myLocation, got, waited);
+		leave(currentBlock, myLocation.getID()); //must release current block
+		if (got!=newBlock) clock.sleep(backOff); //stepped aside - let the others through
+		return got;
 	} 
 	
+	//wait for a block - if the watchdog picks this swimmer to break a deadlock, step aside onto any free
+	//neighbouring block instead and return that; the caller carries on from there
+	//with nowhere to step (in the pool, on a dive, or boxed in) the swimmer lets go of currentBlock and waits
+	//holding nothing, still watched - so callers leave currentBlock with leave(), which skips a block let go of
+	private GridBlock take(GridBlock currentBlock, GridBlock newBlock, int id, boolean canSidestep) throws InterruptedException {
+		if (newBlock.acquire(id, clock, watchdog)) return newBlock;
+		if (canSidestep) {
+			int [][] steps = {{-1,0},{1,0},{0,1},{0,-1}};
+			for (int [] s : steps) {
+				int i = currentBlock.getX()+s[0], j = currentBlock.getY()+s[1];
+				if (!inGrid(i,j)) continue;
+				GridBlock aside = whichBlock(i,j);
+				if (!aside.equals(newBlock) && !aside.isStart() && aside.get(id)) return aside;
+			}
+		}
+		messages.warn("swimmer "+id+" cannot step aside from ("+currentBlock.getX()+","+currentBlock.getY()+") - letting go of it");
+		watchdog.gaveWay(id);
+		try {
+			currentBlock.release(clock); //the cycle ran through this block
+			while (!newBlock.acquire(id, clock, watchdog)); //not asked to back off again, but a wait is a wait
+		} finally {
+			watchdog.movedOn(id);
+		}
+		return newBlock;
+	}
+	
+	//release a block a person is leaving, unless they let go of it already to break a deadlock
+	private void leave(GridBlock b, int id) {
+		if (b.owner()==id) b.release(clock); //only the owner changes it, so it cannot be taken in between
+	}
+	
+	//walk one block towards a destination on the deck, along the route tables
+	//if the next block is taken and another equally short way is free, go that way instead of waiting
+	public GridBlock routeTowards(GridBlock currentBlock, GridBlock destination, PeopleLocation myLocation) throws InterruptedException {
+		DeckRouter r = router;
+		int dx = destination.getX(), dy = destination.getY();
+		int hop = r==null ? -1 : r.nextHop(currentBlock.getX(), currentBlock.getY(), dx, dy, false);
+		if (hop<0) return moveTowards(currentBlock, dx, dy, myLocation); //off the deck - walk greedily
+		int id = myLocation.getID();
+		long waited = waitStart();
+		GridBlock newBlock = whichBlock(r.hopX(hop), r.hopY(hop));
+		boolean aside = false;
+		if (!newBlock.get(id)) {
+			int other = r.nextHop(currentBlock.getX(), currentBlock.getY(), dx, dy, true);
+			GridBlock detour = other<0 ? null : whichBlock(r.hopX(other), r.hopY(other));
+			if (detour!=null && detour.get(id)) {
+				newBlock = detour;
+				detours.increment();
+			} else {
+				GridBlock got = take(currentBlock, newBlock, id, true); //no way round - wait until block is handed over
+				aside = got!=newBlock;
+				newBlock = got;
+			}
+		}
+		myLocation.setLocation(newBlock);
+		logMove(myLocation, newBlock, waited);
+		leave(currentBlock, id); //must release current block
+		if (aside) clock.sleep(backOff); //stepped aside - let the others through
+		return newBlock;
+	}
+	
+	//reserve blocks along the swimmer's lane, from row fromY to row toY, a window at a time
+	//step() on the reservation moves to the next block - the first may be a jump, as in a dive
+	public LaneReservation reserveLane(GridBlock currentBlock, int fromY, int toY, PeopleLocation myLocation) {
+		return new LaneReservation(this, currentBlock, fromY, toY, myLocation, laneWindow);
+	}
+	
+	//wait for the next block of a lane reservation - a swimmer in the pool never steps aside
+	GridBlock acquireLane(GridBlock currentBlock, GridBlock next, int id) throws InterruptedException {
+		return take(currentBlock, next, id, false);
+	}
+	
+	//move onto a block already held, releasing the one left if it is not kept for a batch release
+	void enter(PeopleLocation myLocation, GridBlock newBlock, GridBlock leaving, long waited) {
+		myLocation.setLocation(newBlock);
+		logMove(myLocation, newBlock, waited);
+		if (leaving!=null) leave(leaving, myLocation.getID());
+	}
+	
+	//release a block held by a lane reservation - one the swimmer let go of in a deadlock is not theirs any more
+	void release(GridBlock b, int id) {
+		leave(b, id);
+	}
+	
+	//times a swimmer stepped round an occupied block
+	public long getDetours() { return detours.sum(); }
+	
+	//deadlocks broken by asking a swimmer to step aside
+	public long getDeadlocksBroken() { return watchdog==null ? 0 : watchdog.getResolved(); }
+	
 	//levitate to a specific block -
 public GridBlock jumpTo(GridBlock currentBlock,int x, int y,PeopleLocation myLocation) throws InterruptedException {  
 		//restrict i and j to grid
 		if (!inStadiumArea(x,y)) {
-			System.out.println("Invalid move");
+			messages.warn("Invalid move");
 			//Invalid move to outside  - ignore
 			return currentBlock;
 		}
 
 		GridBlock newBlock= whichBlock(x,y);//try diagonal or y
-		
-		
-			while((!newBlock.get(myLocation.getID()))) { } //wait until block is free - but spinning, not good
-			myLocation.setLocation(newBlock);		
-			currentBlock.release(); //must release current block
-			return newBlock;
-		
-		
+		long waited = waitStart();
+		newBlock = take(currentBlock, newBlock, myLocation.getID(), false); //wait until block is handed over - a diver stays on the block
+		myLocation.setLocation(newBlock);
+		logMove(myLocation, newBlock, waited);
+		leave(currentBlock, myLocation.getID()); //must release current block
+		return newBlock;
 	} 
 	
 //x and y actually correspond to the grid pos, but this is for generality.
 	public GridBlock whichBlock(int xPos, int yPos) {
 		if (inGrid(xPos,yPos)) {
-			return Blocks[xPos][yPos];
+			return compact!=null ? compact.block(xPos,yPos) : Blocks[xPos][yPos];
 		}
-		System.out.println("block " + xPos + " " +yPos + "  not found");
+		messages.warn("block " + xPos + " " +yPos + "  not found");
 		return null;
 	}
-}
-
-
 	
-
-	
-
+	//print the most contended blocks, busiest first - use to find hotspots such as the entrance
+	public void dumpContention(PrintStream out, int top) {
+		if (router!=null) out.println("deck routes: "+router.getTables()+" tables, "+detours.sum()+" detours");
+		for (Gate g : gates) out.println("gate "+g.getIndex()+" ("+g.getBlock().getX()+","+g.getBlock().getY()+"): "+g.getArrivals()+" arrived, "+g.getAdmissions()+" admitted, longest queue "+g.getLongestQueue());
+		if (watchdog!=null) out.println("watchdog: "+watchdog.getCycles()+" deadlocks, "+watchdog.getResolved()+" broken, "+watchdog.getStalls()+" long stalls");
+		if (compact!=null) { //counters are kept per region, not per block
+			out.println("compact grid: acquires "+compact.getAcquires()+", failed "+compact.getFailedAttempts()+", retries "+compact.getRetries());
+			compact.dumpRegions(out, top);
+			return;
+		}
+		List<GridBlock> busy = new ArrayList<GridBlock>();
+		for (int i=0;i<x;i++) {
+			for (int j=0;j<y;j++) {
+				if (Blocks[i][j].getFailedAttempts()+Blocks[i][j].getRetries()>0) busy.add(Blocks[i][j]);
+			}
+		}
+		busy.sort((a,b) -> Long.compare(b.getFailedAttempts()+b.getRetries(), a.getFailedAttempts()+a.getRetries()));
+		out.println("block\tacquires\tfailed\tretries");
+		for (int k=0;k<Math.min(top,busy.size());k++) {
+			GridBlock b = busy.get(k);
+			out.println("["+b.getX()+"]["+b.getY()+"]\t"+b.getAcquires()+"\t"+b.getFailedAttempts()+"\t"+b.getRetries());
+		}
+	}
+}
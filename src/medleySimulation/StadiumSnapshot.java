@@ -0,0 +1,41 @@
+//Class holding one frame of where everyone is, as packed arrays, for drawing.
+//Once published a snapshot does not change until the renderer has let go of it,
+//so a frame is drawn from one consistent moment with no locks.
+package medleySimulation;
+
+public class StadiumSnapshot {
+	
+	private final int [] cells; //x<<16 | y per person, -1 if not in the pool
+	private final int [] colours; //RGB per person
+	private long tick; //which publication this is
+	
+	StadiumSnapshot(int people) {
+		cells = new int[people];
+		colours = new int[people];
+	}
+	
+	//copy where everyone is now - only the publisher calls this, and only on a snapshot nobody is reading
+	void fill(PeopleLocation [] people, long tick) {
+		for (int i = 0; i < people.length; i++) {
+			GridBlock b = people[i].inPool() ? people[i].getLocation() : null;
+			cells[i] = b == null ? -1 : (b.getX()<<16) | b.getY();
+			colours[i] = people[i].getColor().getRGB();
+		}
+		this.tick = tick;
+	}
+	
+	public int size() { return cells.length; }
+	
+	public long getTick() { return tick; }
+	
+	public boolean inPool(int i) { return cells[i] >= 0; }
+	
+	public int getX(int i) { return cells[i]>>>16; }
+	
+	public int getY(int i) { return cells[i] & 0xffff; }
+	
+	public int getColour(int i) { return colours[i]; }
+	
+	//packed position, to compare with another snapshot
+	int getCell(int i) { return cells[i]; }
+}
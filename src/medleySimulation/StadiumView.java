@@ -7,9 +7,14 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
 import javax.swing.JPanel;
 
-//CS2 - DO NOT CHANGE ANY OF THIS CLASS! (except perhaps to uncomment grid for debugging)
+//Panel drawing the stadium: the pool, deck and stands are a cached image, and people are drawn
+//from the snapshots the grid publishes. A thread of its own repaints only the blocks that changed.
 
 public class StadiumView extends JPanel implements Runnable {
 	
@@ -17,11 +22,12 @@ public class StadiumView extends JPanel implements Runnable {
 		private PeopleLocation[] pplLocations; //array of the locations of the patrons
 		private int numPeople;  //total number in the simulation
 
-		private int wIncr; //width of each block
-		private int hIncr; //height of each block
+		private volatile BlockSize block = new BlockSize(0, 0); //set on a resize, read by the repaint thread too
 		private int maxY; //maximum Y  for the grid
 		private int maxX; //Maximum X for the grid
+		private int poolX; //pool and deck are left of this, the stands right of it
 		private int endPool; //where pool ends, starting block position.
+		private final int laneWidth; //grid columns per lane
 		
 		private final int xBorder=5;
 		private final int yBorder = 5;
@@ -35,40 +41,154 @@ public class StadiumView extends JPanel implements Runnable {
 		private final Color water = new Color(200,255,255);
 		StadiumGrid grid; //shared grid
 		
+		private final long framePeriod; //nanoseconds between frames
+		private final DirtyRegions dirty; //blocks people have moved into or out of since the last frame
+		private final SnapshotPublisher snapshots; //where everyone is, published by the grid - never the live locations
+		private BufferedImage background; //pool, deck and lanes, redrawn only when the panel is resized
+		private final Map<Integer, BufferedImage> sprites = new HashMap<Integer, BufferedImage>(); //swimmer oval per colour
+		private static final BasicStroke laneStroke = new BasicStroke(3);
+		private static final Font counterFont = new Font("Helvetica", Font.PLAIN, 10);
+		private Font idFont = counterFont; //for labelling swimmers, sized to the blocks
+		private volatile boolean fullRepaint = true; //first frame draws everything
+		private volatile double frameMillis; //smoothed time taken to paint a frame
+		private int fps; //frames painted in the last second
+		private int framesThisSecond;
+		private long secondStart = System.nanoTime();
+		
+		//size of a grid block in pixels - replaced whole, so the width and height read always go together
+		private static final class BlockSize {
+			final int w, h;
+			BlockSize(int w, int h) { this.w=w; this.h=h; }
+		}
+		
 		StadiumView(PeopleLocation[] people,  StadiumGrid grid) { //constructor
+			this(people, grid, 30);
+		}
+		
+		StadiumView(PeopleLocation[] people,  StadiumGrid grid, int targetFps) { //constructor
+			this.framePeriod = 1000000000L/Math.max(1, targetFps);
+			this.dirty = new DirtyRegions(grid.getMaxX(), grid.getMaxY());
+			this.snapshots = grid.publishSnapshots(people, targetFps);
+			snapshots.setDirtyRegions(dirty); //snapshots report who moved
 			this.pplLocations=people; 
 			numPeople = people.length;
 			this.grid = grid;
 			this.maxY = grid.getMaxY();
 		    this.maxX= grid.getMaxX();
-		    this.endPool = StadiumGrid.start_y;
+		    this.poolX= grid.getPoolX();
+		    this.endPool = grid.getStartY();
+		    this.laneWidth = grid.getLaneWidth();
 		    
 		    int width = getWidth();
 		    int height = getHeight();
-		    wIncr= width/(maxX+xBorder*2); 
-		    hIncr= height/(maxY+yBorder*2);
+		    block = new BlockSize(width/(maxX+xBorder*2), height/(maxY+yBorder*2));
+		}
+		
+		//a view that is never shown, for drawing frames into images with render - no snapshots are published
+		StadiumView(StadiumGrid grid) {
+			this.framePeriod = 0;
+			this.dirty = null;
+			this.snapshots = null;
+			this.pplLocations = null;
+			this.grid = grid;
+			this.maxY = grid.getMaxY();
+		    this.maxX= grid.getMaxX();
+		    this.poolX= grid.getPoolX();
+		    this.endPool = grid.getStartY();
+		    this.laneWidth = grid.getLaneWidth();
 		}
 		
-		//paint the picture constantly
+		//paint the picture constantly - the pool is a cached image, so a frame costs about one sprite per swimmer
 		public void paintComponent(Graphics g) {
-			Graphics2D g2 = (Graphics2D) g;
+			long paintStart = System.nanoTime();
 		    int width = getWidth();
 		    int height = getHeight();
-		    wIncr= width/(maxX+xBorder*2); 
-		    hIncr= height/(maxY+yBorder*2);
+		    if (background==null || background.getWidth()!=width || background.getHeight()!=height) drawBackground(width, height);
+		    g.drawImage(background, 0, 0, null); //only the clipped part is copied
+
+		   //draw the ovals representing people in middle of grid block
+			 g.setFont(idFont);
+			 Rectangle clip = g.getClipBounds(); //most frames only repaint the blocks that changed
+			 		 
+			 //patrons, from one consistent snapshot
+			StadiumSnapshot frame = snapshots.acquire();
+			try {
+				drawSwimmers(g, frame, clip);
+			} finally {
+				snapshots.release();
+			}
+		    
+		    //frame-time counter
+		    g.setColor(Color.black);
+		    g.setFont(counterFont);
+		    g.drawString(String.format("%.2f ms/frame  %d fps  snapshot %.1f us", frameMillis, fps, snapshots.getPublishMicros()), 2, 12);
+		    
+		    long now = System.nanoTime();
+		    frameMillis = 0.9*frameMillis + 0.1*(now-paintStart)/1e6;
+		    RaceMetrics m = RaceMetrics.get();
+		    if (m!=null) m.framePainted(now-paintStart);
+		    framesThisSecond++;
+		    if (now-secondStart>=1000000000L) {
+		    	fps = framesThisSecond;
+		    	framesThisSecond = 0;
+		    	secondStart = now;
+		    }
+		   }
+	
+		//draw everyone in the pool, skipping those outside the clip, if there is one
+		private void drawSwimmers(Graphics g, StadiumSnapshot frame, Rectangle clip) {
+			BlockSize b = block;
+			int wIncr = b.w, hIncr = b.h;
+			int x,y;
+		    for (int i=0;i<frame.size();i++){	    	
+		    		if (frame.inPool(i)) {
+			    		x= (frame.getX(i)+xBorder)*wIncr;
+			    		y= (frame.getY(i)+yBorder)*hIncr;
+			    		if (clip!=null && !clip.intersects(x+wIncr, y, wIncr, hIncr)) continue;
+			    		g.drawImage(sprite(frame.getColour(i), wIncr, hIncr), x+wIncr, y, null);
+			    		//g.drawString(pplLocations[i].getID()+"",x+wIncr/4, y+wIncr/4);
+		    		}
+		    }
+		}
+		
+		//draw a whole frame into an image, as paintComponent would for a panel that size
+		//a view keeps its pool image and sprites between calls, so use one view per thread
+		void render(StadiumSnapshot frame, BufferedImage into) {
+			if (background==null || background.getWidth()!=into.getWidth() || background.getHeight()!=into.getHeight()) drawBackground(into.getWidth(), into.getHeight());
+			Graphics2D g = into.createGraphics();
+			try {
+				g.drawImage(background, 0, 0, null);
+				drawSwimmers(g, frame, null);
+			} finally {
+				g.dispose();
+			}
+		}
+		
+		//draw the pool, deck, lane lines, starting blocks, stands and gates once for this panel size
+		private void drawBackground(int width, int height) {
+		    int wIncr= width/(maxX+xBorder*2); 
+		    int hIncr= height/(maxY+yBorder*2);
+		    block = new BlockSize(wIncr, hIncr);
+		    background = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+		    sprites.clear(); //swimmers are one block in size
+		    idFont = new Font("Helvetica", Font.BOLD, Math.max(1, hIncr/2));
+			Graphics2D g2 = background.createGraphics();
+			Graphics g = g2;
+			g.setColor(getBackground());
+			g.fillRect(0, 0, width, height);
 
 		    g.setColor(Color.darkGray); //background
 		    g.drawRect(0,0,width,height);
 		    
 		    g.setColor(water);
-		    g.fillRect(xBorder*wIncr,yBorder*hIncr,(maxX)*wIncr,(endPool)*hIncr); //water 
+		    g.fillRect(xBorder*wIncr,yBorder*hIncr,(poolX)*wIncr,(endPool)*hIncr); //water 
 		    g.setColor(Color.white);
-		    g.fillRect(xBorder*wIncr,(yBorder+endPool)*hIncr,(maxX)*wIncr,(maxY-endPool)*hIncr); //concrete
+		    g.fillRect(xBorder*wIncr,(yBorder+endPool)*hIncr,(poolX)*wIncr,(maxY-endPool)*hIncr); //concrete
 		    
 		    //draw top and bottom edge
 		    g.setColor(Color.lightGray);
-		    g.fillRect(wIncr*xBorder, (yBorder-1)*hIncr, wIncr*(maxX), hIncr);
-		    g.fillRect(wIncr*xBorder, (endPool+yBorder)*hIncr, wIncr*(maxX), hIncr*1);
+		    g.fillRect(wIncr*xBorder, (yBorder-1)*hIncr, wIncr*(poolX), hIncr);
+		    g.fillRect(wIncr*xBorder, (endPool+yBorder)*hIncr, wIncr*(poolX), hIncr*1);
 		    g.setColor(Color.black);
 		    
 		    //draw grid lines  - uncomment to see where grid is
@@ -80,34 +200,50 @@ public class StadiumView extends JPanel implements Runnable {
 	       */
 		    
 		    //draw lane lines
-		    g2.setStroke(new BasicStroke(3));
+		    g2.setStroke(laneStroke);
 		    int lane=0, i=0;
-		    for ( i=0;i<maxX;i+=5)  { //columns 
-		    	    g.setColor(laneColours[lane]);
+		    for ( i=0;i<poolX;i+=laneWidth)  { //columns 
+		    	    g.setColor(laneColours[lane%laneColours.length]);
 		    	    lane++;
 		    	    g.drawLine((i+xBorder)*wIncr, hIncr*yBorder, (i+xBorder)*wIncr, (endPool+yBorder)*hIncr); //- leave space at bottom
 				    g.setColor(Color.white);
 				    g.fillRect((i+2+xBorder)*wIncr,(endPool+yBorder)*hIncr,wIncr, hIncr); //draw starting blocks outside pool	   
 		    }
-    	    g.setColor(laneColours[lane]);
+    	    g.setColor(laneColours[lane%laneColours.length]);
     	    g.drawLine((i+xBorder)*wIncr, hIncr*yBorder, (i+xBorder)*wIncr, (endPool+yBorder)*hIncr); //draw last one
+    	    
+    	    //stands: seats in grey, with the aisles and concourse between them
+    	    Stands stands = grid.getStands();
+    	    if (stands!=null) {
+    	    	g.setColor(new Color(235,235,235));
+    	    	g.fillRect((poolX+xBorder)*wIncr, yBorder*hIncr, (maxX-poolX)*wIncr, maxY*hIncr);
+    	    	g.setColor(Color.lightGray);
+    	    	for (int c=poolX;c<maxX;c++) {
+    	    		if (stands.isAisle(c)) continue;
+    	    		for (int r=0;r<maxY;r++) {
+    	    			if (stands.isSeat(c,r)) g.fillRect((c+xBorder)*wIncr+1, (r+yBorder)*hIncr+1, Math.max(1, wIncr-2), Math.max(1, hIncr-2));
+    	    		}
+    	    	}
+    	    }
+    	    g.setColor(Color.darkGray); //gates
+    	    for (Gate gate : grid.getGates()) g.drawRect((gate.getBlock().getX()+xBorder)*wIncr, (gate.getBlock().getY()+yBorder)*hIncr, wIncr, hIncr);
+    	    g2.dispose();
+		}
+		
+		//a swimmer's oval in a colour, drawn once per colour and panel size
+		private BufferedImage sprite(int rgb, int wIncr, int hIncr) {
+			BufferedImage s = sprites.get(rgb);
+			if (s==null) {
+				s = new BufferedImage(Math.max(1, wIncr), Math.max(1, hIncr), BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g = s.createGraphics();
+				g.setColor(new Color(rgb, true));
+				g.fillOval(0, 0, wIncr, hIncr);
+				g.dispose();
+				sprites.put(rgb, s);
+			}
+			return s;
+		}
 
-		   //draw the ovals representing people in middle of grid block
-			int x,y;
-			 g.setFont(new Font("Helvetica", Font.BOLD, hIncr/2));
-			 		 
-			 //patrons
-		    for ( i=0;i<numPeople;i++){	    	
-		    		if (pplLocations[i].inPool()) {
-			    		g.setColor(pplLocations[i].getColor());
-			    		x= (pplLocations[i].getX()+xBorder)*wIncr;
-			    		y= (pplLocations[i].getY()+yBorder)*hIncr;
-			    		g.fillOval(x+wIncr, y , wIncr, hIncr);
-			    		//g.drawString(pplLocations[i].getID()+"",x+wIncr/4, y+wIncr/4);
-		    		}
-		    } 		    
-		   }
-	
 		public int getEndPool() {
 			return endPool;
 		}
@@ -116,10 +252,31 @@ public class StadiumView extends JPanel implements Runnable {
 			this.endPool = endPool;
 		}
 
-		//the thread just continually redraws the image
+		//the thread redraws, at most at the target frame rate, only the blocks that have changed
 		public void run() {
+			long nextFrame = System.nanoTime();
 			while (true) {
-				repaint();
+				nextFrame += framePeriod;
+				long wait = nextFrame - System.nanoTime();
+				if (wait > 0) {
+					try {
+						Thread.sleep(wait/1000000, (int) (wait%1000000));
+					} catch (InterruptedException e) {
+						return;
+					}
+				} else {
+					nextFrame = System.nanoTime(); //running late - don't try to catch up
+				}
+				if (fullRepaint) {
+					fullRepaint = false;
+					dirty.drain((x,y) -> {});
+					repaint();
+				} else {
+					//people are drawn one block to the right of their grid position
+					BlockSize b = block; //one size for the whole frame
+					dirty.drain((x,y) -> repaint((x+xBorder+1)*b.w, (y+yBorder)*b.h, b.w+1, b.h+1));
+				}
+				repaint(0, 0, 240, 16); //frame-time counter
 			}
 		}
 
@@ -0,0 +1,197 @@
+//Class watching for swimmers that block each other on the grid.
+//A swimmer holds its block while it waits for the next one, so two swimmers that each want
+//the other's block wait forever. Swimmers only tell the watchdog when they park on a block,
+//which gives a wait-for graph: waiter -> owner of the block it wants. The graph is searched
+//for cycles off the swimmers' threads - by a scanner thread in the animation, and by the
+//race clock when every swimmer of a headless race is blocked. A cycle is broken by asking
+//one swimmer in it, the highest ID, to back off and step aside. A swimmer with nowhere to step
+//lets go of its block instead and waits holding nothing; it is not asked again until it moves.
+package medleySimulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class StallWatchdog {
+
+	private static final AsyncLog messages = AsyncLog.OUT;
+
+	//a swimmer parked on a block
+	static class Wait {
+		final int id;
+		final GridBlock block; //the block it wants
+		final GridBlock.Waiter waiter;
+		final int version; //the block's version when it started waiting
+		final long since = System.nanoTime();
+		volatile boolean backOff; //set to make it give up waiting
+		boolean reported; //long stall already reported - scanner thread only
+
+		Wait(int id, GridBlock block, GridBlock.Waiter waiter) {
+			this.id=id;
+			this.block=block;
+			this.waiter=waiter;
+			version=block.version();
+		}
+	}
+
+	private final RaceClock clock;
+	private final ConcurrentHashMap<Integer, Wait> waiting = new ConcurrentHashMap<Integer, Wait>();
+	private final Set<Integer> gaveWay = ConcurrentHashMap.newKeySet(); //let go of their block - backing off again frees nothing
+	private final LongAdder cycles = new LongAdder(); //deadlocks found
+	private final LongAdder resolved = new LongAdder(); //swimmers asked to back off
+	private final LongAdder stalls = new LongAdder(); //long waits reported
+	private volatile Thread scanner;
+
+	StallWatchdog(RaceClock clock) {
+		this.clock=clock;
+	}
+
+	//a swimmer is about to park on a block - returns its wait, to check for backOff
+	public Wait waiting(int id, GridBlock block, GridBlock.Waiter waiter) {
+		Wait w = new Wait(id, block, waiter);
+		waiting.put(id, w);
+		return w;
+	}
+
+	//the swimmer has stopped waiting
+	public void done(Wait w) {
+		waiting.remove(w.id, w);
+	}
+
+	//a swimmer asked to back off had nowhere to step, and let go of its block instead
+	public void gaveWay(int id) {
+		gaveWay.add(id);
+	}
+
+	//the swimmer has the block it was waiting for
+	public void movedOn(int id) {
+		gaveWay.remove(id);
+	}
+
+	//check the graph every period milliseconds, and report waits longer than stallMillis
+	public void start(long period, long stallMillis) {
+		Thread t = new Thread(() -> {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					Thread.sleep(period);
+					scan(stallMillis*1000000L, period*1000000L);
+				}
+			} catch (InterruptedException e) {
+				//stopped
+			}
+		}, "watchdog");
+		t.setDaemon(true);
+		scanner = t;
+		t.start();
+	}
+
+	public void stop() {
+		Thread t = scanner;
+		if (t!=null) t.interrupt();
+	}
+
+	//every swimmer left is blocked - called by the race clock, holding its lock, before it gives up on the race
+	//nothing can move, so any cycle found is real - returns true if a swimmer was asked to back off
+	public boolean resolve() {
+		boolean any = false;
+		for (List<Wait> cycle : findCycles(new TreeMap<Integer, Wait>(waiting))) {
+			report(cycle);
+			any |= backOff(cycle);
+		}
+		return any;
+	}
+
+	//one pass of the scanner thread - a cycle only counts if it has stood still for at least settle nanoseconds
+	private void scan(long stallNanos, long settleNanos) {
+		long now = System.nanoTime();
+		TreeMap<Integer, Wait> snapshot = new TreeMap<Integer, Wait>(waiting);
+		for (List<Wait> cycle : findCycles(snapshot)) {
+			if (isSettled(cycle, now-settleNanos)) {
+				report(cycle);
+				backOff(cycle);
+			}
+		}
+		for (Wait w : snapshot.values()) {
+			if (w.reported || now-w.since < stallNanos || waiting.get(w.id)!=w) continue;
+			w.reported = true;
+			stalls.increment();
+			messages.warn("stall: " + chain(w, snapshot) + " for " + (now-w.since)/1000000L + " ms");
+		}
+	}
+
+	//cycles in the wait-for graph, walked in ID order - every swimmer waits for at most one other, so a walk finds them
+	private List<List<Wait>> findCycles(Map<Integer, Wait> snapshot) {
+		List<List<Wait>> found = new ArrayList<List<Wait>>();
+		Map<Integer, Integer> walk = new HashMap<Integer, Integer>(); //swimmer to the walk that reached it
+		int walkNo = 0;
+		for (int start : snapshot.keySet()) {
+			if (walk.containsKey(start)) continue;
+			walkNo++;
+			int id = start;
+			while (id>=0 && snapshot.containsKey(id) && !walk.containsKey(id)) {
+				walk.put(id, walkNo);
+				id = snapshot.get(id).block.owner();
+			}
+			if (id<0 || !snapshot.containsKey(id) || walk.get(id)!=walkNo) continue; //ends at someone not waiting, or an old walk
+			List<Wait> cycle = new ArrayList<Wait>();
+			int at = id;
+			do {
+				cycle.add(snapshot.get(at));
+				at = snapshot.get(at).block.owner();
+			} while (at!=id && at>=0 && snapshot.containsKey(at) && cycle.size()<=snapshot.size());
+			if (at==id) found.add(cycle);
+		}
+		return found;
+	}
+
+	//has nobody in the cycle moved since it was seen, and have they all been waiting since before the time given?
+	private boolean isSettled(List<Wait> cycle, long before) {
+		for (Wait w : cycle) {
+			if (waiting.get(w.id)!=w || w.block.version()!=w.version || w.since>before) return false;
+		}
+		return true;
+	}
+
+	//ask the highest ID in the cycle that still holds its block to give up its wait
+	private boolean backOff(List<Wait> cycle) {
+		Wait victim = null;
+		for (Wait w : cycle) if (!gaveWay.contains(w.id) && (victim==null || w.id>victim.id)) victim = w;
+		if (victim==null || victim.backOff) return false; //nobody left to ask, or already asked
+		victim.backOff = true;
+		resolved.increment();
+		if (victim.waiter.signalled.compareAndSet(false, true)) clock.busy(); //count it back in before it runs
+		LockSupport.unpark(victim.waiter.thread);
+		return true;
+	}
+
+	private void report(List<Wait> cycle) {
+		cycles.increment();
+		StringBuilder s = new StringBuilder("deadlock:");
+		for (Wait w : cycle) s.append(" swimmer ").append(w.id).append(" wants (").append(w.block.getX()).append(',').append(w.block.getY()).append(") held by ").append(w.block.owner()).append(';');
+		messages.warn(s.toString());
+	}
+
+	//who a swimmer is waiting for, and who they are waiting for in turn
+	private String chain(Wait w, Map<Integer, Wait> snapshot) {
+		StringBuilder s = new StringBuilder();
+		for (int hops = 0; w!=null && hops<8; hops++) {
+			int owner = w.block.owner();
+			s.append("swimmer ").append(w.id).append(" wants (").append(w.block.getX()).append(',').append(w.block.getY()).append(") held by ").append(owner);
+			w = snapshot.get(owner);
+			if (w!=null) s.append(", ");
+		}
+		return s.toString();
+	}
+
+	public long getCycles() { return cycles.sum(); }
+
+	public long getResolved() { return resolved.sum(); }
+
+	public long getStalls() { return stalls.sum(); }
+}
@@ -0,0 +1,72 @@
+//Class laying out the stands: columns of seats to the right of the pool, for spectators.
+//Columns go aisle, seat, aisle, seat, ... aisle, so every seat is between two aisles. Aisles are
+//one way: every other one is for coming in, and the rest for going out, so people never meet head
+//on in an aisle a block wide. The concourse row, level with the entrances, is walked in along and the
+//row below it out along; neither has seats. Seats are handed out nearest the concourse first, so
+//a small crowd does not climb to the back rows.
+package medleySimulation;
+
+public class Stands {
+
+	private final int left; //first column - an aisle in
+	private final int columns;
+	private final int concourse; //row walked in along - the one below is walked out along
+	private final int seatColumns;
+	private final int [] rows; //seat rows, nearest the concourse first
+
+	Stands(int left, int columns, int y, int concourse) {
+		this.left=left;
+		this.columns=columns;
+		this.concourse=concourse;
+		seatColumns = columns<1 ? 0 : (columns-1)/2; //one after each aisle but the last
+		rows = new int[y-2];
+		int n = 0;
+		for (int d = 1; n<rows.length; d++) {
+			if (concourse-d>=0) rows[n++] = concourse-d;
+			if (concourse+1+d<y && n<rows.length) rows[n++] = concourse+1+d;
+		}
+	}
+
+	//columns needed to seat people in stands rows high - aisle, then a seat and an aisle as often as needed
+	public static int columnsFor(int people, int rows) {
+		if (people<=0) return 0;
+		int seatColumns = (people+rows-3)/(rows-2); //the concourse and exit rows have no seats
+		return 2*seatColumns+1;
+	}
+
+	public int seats() { return seatColumns*rows.length; }
+
+	//where seat s is - seats fill a row across the stands before the next row
+	public int seatX(int s) { return left + 1 + 2*(s%seatColumns); }
+
+	public int seatY(int s) { return rows[s/seatColumns]; }
+
+	//the aisle in to a seat in column seatX
+	public int aisleIn(int seatX) {
+		return (seatX-left)%4==1 ? seatX-1 : seatX+1;
+	}
+
+	//the aisle out from a seat in column seatX
+	public int aisleOut(int seatX) {
+		return (seatX-left)%4==1 ? seatX+1 : seatX-1;
+	}
+
+	//is column i in the stands an aisle?
+	public boolean isAisle(int i) {
+		return i>=left && (i-left)%2==0;
+	}
+
+	//is block (i,j) a seat?
+	public boolean isSeat(int i, int j) {
+		return i>=left && i<left+columns && !isAisle(i) && j!=concourse && j!=concourse+1;
+	}
+
+	public int getLeft() { return left; }
+
+	public int getColumns() { return columns; }
+
+	public int getConcourse() { return concourse; }
+
+	//row walked along on the way out
+	public int getExitRow() { return concourse+1; }
+}
@@ -2,19 +2,36 @@
 //Class to represent a swim team - which has four swimmers
 package medleySimulation;
 
+import java.util.Random;
+
 import medleySimulation.Swimmer.SwimStroke;
 
-public class SwimTeam extends Thread {
+public class SwimTeam implements Runnable {
 	
-	public static StadiumGrid stadium; //shared 
+	private final StadiumGrid stadium; //shared by the teams in a race
+	private final ThreadMode mode; //platform or virtual threads
+	private final RelayBaton baton; //passed from swimmer to swimmer
 	private Swimmer [] swimmers;
+	private Thread [] swimmerThreads; //set once the swimmers are started - under this team's lock
+	private boolean stopped; //stopSwimmers was called, so none should start - under this team's lock
+	private Thread thread; //this team's thread
 	private int teamNo; //team number 
 
 	
-	public static final int sizeOfTeam=4;
+	public static final int defaultSize=4; //a full medley
+	private final int sizeOfTeam; //swimmers in this team, one per leg
+	
+	SwimTeam( int ID, StadiumGrid stadium, FinishCounter finish,PeopleLocation [] locArr ) {
+		this(ID,stadium,finish,locArr,ThreadMode.PLATFORM,defaultSize,new Random());
+	}
 	
-	SwimTeam( int ID, FinishCounter finish,PeopleLocation [] locArr ) {
+	//rand gives the speeds, and seeds each swimmer's own randomness
+	SwimTeam( int ID, StadiumGrid stadium, FinishCounter finish,PeopleLocation [] locArr, ThreadMode mode, int size, Random rand ) {
 		this.teamNo=ID;
+		this.sizeOfTeam=size;
+		this.stadium=stadium;
+		this.mode=mode;
+		baton = new RelayBaton(stadium.getClock());
 		
 		swimmers= new Swimmer[sizeOfTeam];
 	    SwimStroke[] strokes = SwimStroke.values();  // Get all enum constants
@@ -22,26 +39,48 @@ public class SwimTeam extends Thread {
 
 		for(int i=teamNo*sizeOfTeam,s=0;i<((teamNo+1)*sizeOfTeam); i++,s++) { //initialise swimmers in team
 			locArr[i]= new PeopleLocation(i,strokes[s].getColour());
-	      	int speed=(int)(Math.random() * (3)+30); //range of speeds 
-			swimmers[s] = new Swimmer(i,teamNo,locArr[i],finish,speed,strokes[s]); //hardcoded speed for now
+	      	int speed=rand.nextInt(3)+30; //range of speeds 
+			swimmers[s] = new Swimmer(i,teamNo,stadium,locArr[i],finish,baton,speed,strokes[s],s==sizeOfTeam-1,new Random(rand.nextLong()));
 		}
 	}
 	
 	
+	public RelayBaton getBaton() { return baton; }
+	
+	//start the team's thread, which in turn starts the swimmers
+	public void start() {
+		thread = mode.start(this, "team-"+teamNo);
+	}
+	
+	//wait for the team's thread to finish - at once if it was never started
+	public void join() throws InterruptedException {
+		if (thread!=null) thread.join();
+	}
+	
 	public void run() {
 		try {	
-			for(int s=0;s<sizeOfTeam; s++) { //start swimmer threads
-				swimmers[s].start();
-				
+			Thread [] started = new Thread[sizeOfTeam];
+			synchronized (this) { //so a stop either comes first, or finds every thread
+				if (stopped) return;
+				for(int s=0;s<sizeOfTeam; s++) { //start swimmer threads
+					started[s] = mode.start(swimmers[s], "swimmer-"+swimmers[s].getID());
+				}
+				swimmerThreads = started;
 			}
 			
-			for(int s=0;s<sizeOfTeam; s++) swimmers[s].join();			//don't really need to do this;
+			for(int s=0;s<sizeOfTeam; s++) started[s].join();			//don't really need to do this;
 			
 		} catch (InterruptedException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 	}
+	
+	//stop all the swimmers in the team, e.g. when a race has stalled
+	public synchronized void stopSwimmers() {
+		stopped = true;
+		if (swimmerThreads==null) return; //not started yet - and now never will be
+		for(int s=0;s<sizeOfTeam; s++) swimmerThreads[s].interrupt();
+	}
 }
 	
-
@@ -9,10 +9,14 @@ import java.util.Random;
 
 
 
-public class Swimmer extends Thread {
+public class Swimmer implements Runnable {
 	
-	public static StadiumGrid stadium; //shared 
+	private final StadiumGrid stadium; //shared by the swimmers in a race
+	private final RaceClock clock; //the race's clock - all waiting goes through it
 	private FinishCounter finish; //shared
+	private final RelayBaton baton; //shared with the rest of the team
+	private final boolean anchor; //swims the last leg, so finishes the race
+	private static final AsyncLog messages = AsyncLog.OUT; //debug output, printed off the swimmer's thread
 	
 		
 	GridBlock currentBlock;
@@ -23,6 +27,7 @@ public class Swimmer extends Thread {
 	private int ID; //thread ID 
 	private int team; // team ID
 	private GridBlock start;
+	private LaneReservation reservation; //blocks held ahead in the pool
 
 	public enum SwimStroke { 
 		Backstroke(1,2.5,Color.black),
@@ -42,20 +47,27 @@ public class Swimmer extends Thread {
 	  
 	        public int getOrder() {return order;}
 
+	        public double getStrokeTime() {return strokeTime;}
+
 	        public  Color getColour() { return colour; }
 	    }  
 	    private final SwimStroke swimStroke;
 	
 	//Constructor
-	Swimmer( int ID, int t, PeopleLocation loc, FinishCounter f, int speed, SwimStroke s) {
+	Swimmer( int ID, int t, StadiumGrid stadium, PeopleLocation loc, FinishCounter f, RelayBaton b, int speed, SwimStroke s, boolean anchor, Random rand) {
 		this.swimStroke = s;
 		this.ID=ID;
 		movingSpeed=speed; //range of speeds for swimmers
 		this.myLocation = loc;
 		this.team=t;
+		this.stadium=stadium;
+		clock=stadium.getClock();
+		clock.join(); //counted in the race from now, so the thread must be started
 		start = stadium.returnStartingBlock(team);
 		finish=f;
-		rand=new Random();
+		baton=b;
+		this.anchor=anchor;
+		this.rand=rand; //seeded by the team
 	}
 	
 	//getter
@@ -66,20 +78,26 @@ public class Swimmer extends Thread {
 	
 	//getter
 	public   int getSpeed() { return movingSpeed; }
+	
+	//getter
+	public   int getID() { return ID; }
 
 	
+	//which leg of the relay, 0 is first
+	private int leg() {
+		return swimStroke.getOrder()-1;
+	}
+	
 	public SwimStroke getSwimStroke() {
 		return swimStroke;
 	}
 
-	//!!!You do not need to change the method below!!!
 	//swimmer enters stadium area
 	public void enterStadium() throws InterruptedException {
-		currentBlock = stadium.enterStadium(myLocation);  //
-		sleep(200);  //wait a bit at door, look around
+		currentBlock = stadium.enterStadium(myLocation,stadium.nearestGate(start.getX(),true));  //in turn at the gate nearest the lane
+		clock.sleep(200);  //wait a bit at door, look around
 	}
 	
-	//!!!You do not need to change the method below!!!
 	//go to the starting blocks
 	//printlns are left here for help in debugging
 	public void goToStartingBlocks() throws InterruptedException {		
@@ -87,70 +105,86 @@ public class Swimmer extends Thread {
 		int y_st= start.getY();
 	//System.out.println("Thread "+this.ID + " has start position: " + x_st  + " " +y_st );
 	// System.out.println("Thread "+this.ID + " at " + currentBlock.getX()  + " " +currentBlock.getY() );
-	 while (currentBlock!=start) {
+	 while (!currentBlock.equals(start)) {
 		//	System.out.println("Thread "+this.ID + " has starting position: " + x_st  + " " +y_st );
 		//	System.out.println("Thread "+this.ID + " at position: " + currentBlock.getX()  + " " +currentBlock.getY() );
-			sleep(movingSpeed*3);  //not rushing 
-			currentBlock=stadium.moveTowards(currentBlock,x_st,y_st,myLocation); //head toward starting block
+			clock.sleep(movingSpeed*3);  //not rushing 
+			currentBlock=stadium.routeTowards(currentBlock,start,myLocation); //head toward starting block
 		//	System.out.println("Thread "+this.ID + " moved toward start to position: " + currentBlock.getX()  + " " +currentBlock.getY() );
 		}
-	System.out.println("-----------Thread "+this.ID + " at start " + currentBlock.getX()  + " " +currentBlock.getY() );
+	if (messages.enabled(AsyncLog.Level.DEBUG)) messages.debug("-----------Thread "+this.ID + " at start " + currentBlock.getX()  + " " +currentBlock.getY() );
 	}
 	
-	//!!!You do not need to change the method below!!!
 	//dive in to the pool
 	private void dive() throws InterruptedException {
-		int x= currentBlock.getX();
 		int y= currentBlock.getY();
-		currentBlock=stadium.jumpTo(currentBlock,x,y-2,myLocation);
+		finish.getLedger().recordDive(ID, swimStroke, clock.now()); //leg starts
+		stadium.mark(RaceTrace.DIVE, ID, currentBlock);
+		reservation=stadium.reserveLane(currentBlock,y-2,0,myLocation); //the dive, and the first strokes out
+		currentBlock=reservation.step();
+		baton.dived(leg()); //starting block is free for the next swimmer
 	}
 	
-	//!!!You do not need to change the method below!!!
 	//swim there and back
 	private void swimRace() throws InterruptedException {
-		int x= currentBlock.getX();
 		while((boolean) ((currentBlock.getY())!=0)) {
-			currentBlock=stadium.moveTowards(currentBlock,x,0,myLocation);
+			currentBlock=reservation.step();
 			//System.out.println("Thread "+this.ID + " swimming " + currentBlock.getX()  + " " +currentBlock.getY() );
-			sleep((int) (movingSpeed*swimStroke.strokeTime)); //swim
-			System.out.println("Thread "+this.ID + " swimming  at speed" + movingSpeed );	
+			clock.sleep((int) (movingSpeed*swimStroke.strokeTime)); //swim
+			if (messages.enabled(AsyncLog.Level.DEBUG)) messages.debug("Thread "+this.ID + " swimming  at speed" + movingSpeed );	
 		}
 
-		while((boolean) ((currentBlock.getY())!=(StadiumGrid.start_y-1))) {
-			currentBlock=stadium.moveTowards(currentBlock,x,StadiumGrid.start_y,myLocation);
+		reservation.finish(); //turn
+		reservation=stadium.reserveLane(currentBlock,currentBlock.getY()+1,stadium.getStartY()-1,myLocation);
+		while((boolean) ((currentBlock.getY())!=(stadium.getStartY()-1))) {
+			currentBlock=reservation.step();
 			//System.out.println("Thread "+this.ID + " swimming " + currentBlock.getX()  + " " +currentBlock.getY() );
-			sleep((int) (movingSpeed*swimStroke.strokeTime));  //swim
+			clock.sleep((int) (movingSpeed*swimStroke.strokeTime));  //swim
 		}
+		reservation.finish(); //keeps only the block at the wall
+		reservation=null;
+		finish.getLedger().recordTouch(ID, clock.now()); //leg ends
+		stadium.mark(RaceTrace.TOUCH, ID, currentBlock);
+		baton.touched(leg()); //next swimmer can dive
+		RaceMetrics m = RaceMetrics.get();
+		if (m!=null) m.legSwum();
 		
 	}
 	
-	//!!!You do not need to change the method below!!!
 	//after finished the race
 	public void exitPool() throws InterruptedException {		
 		int bench=stadium.getMaxY()-swimStroke.getOrder(); 			 //they line up
 		int lane = currentBlock.getX()+1;//slightly offset
 		currentBlock=stadium.moveTowards(currentBlock,lane,currentBlock.getY(),myLocation);
+		GridBlock seat = stadium.whichBlock(lane,bench);
 	   while (currentBlock.getY()!=bench) {
-		 	currentBlock=stadium.moveTowards(currentBlock,lane,bench,myLocation);
-			sleep(movingSpeed*3);  //not rushing 
+		 	currentBlock=stadium.routeTowards(currentBlock,seat,myLocation);
+			clock.sleep(movingSpeed*3);  //not rushing 
 		}
 	}
 	
 	public void run() {
 		try {
+			clock.begin(ID);
 			
 			//Swimmer arrives
-			sleep(movingSpeed+(rand.nextInt(10))); //arriving takes a while
+			clock.sleep(movingSpeed+(rand.nextInt(10))); //arriving takes a while
 			myLocation.setArrived();
+			baton.awaitBlock(leg()); //wait until the previous swimmer has left the block
 			enterStadium();	
 			
 			goToStartingBlocks();
-								
+			
+			baton.awaitTouch(leg()); //take over when the previous swimmer touches
 			dive(); 
 				
 			swimRace();
-			if(swimStroke.order==4) {
+			if(anchor) {
+				long touched = System.nanoTime();
 				finish.finishRace(ID, team); // fnishline
+				RaceMetrics m = RaceMetrics.get();
+				if (m!=null) m.finished(System.nanoTime()-touched);
+				stadium.mark(RaceTrace.FINISH, ID, currentBlock);
 			}
 			else {
 				//System.out.println("Thread "+this.ID + " done " + currentBlock.getX()  + " " +currentBlock.getY() );			
@@ -158,7 +192,9 @@ public class Swimmer extends Thread {
 			}
 			
 		} catch (InterruptedException e1) {  //do nothing
-		} 
+		} finally {
+			clock.leave();
+		}
 	}
 	
 }
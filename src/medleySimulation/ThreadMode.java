@@ -0,0 +1,59 @@
+//Which kind of thread swimmers and teams run on.
+//Virtual threads need Java 21 or later - on older JVMs VIRTUAL falls back to platform threads.
+package medleySimulation;
+
+import java.lang.reflect.Method;
+
+public enum ThreadMode {
+	PLATFORM,
+	VIRTUAL;
+	
+	//looked up reflectively so that the simulation still compiles and runs on Java 17
+	private static final Method ofVirtual;
+	private static final Method builderName;
+	private static final Method builderStart;
+	static {
+		Method of = null, name = null, start = null;
+		try {
+			of = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class);
+			start = builder.getMethod("start", Runnable.class);
+		} catch (ReflectiveOperationException e) {
+			of = null; //no virtual threads in this JVM
+		}
+		ofVirtual = of;
+		builderName = name;
+		builderStart = start;
+	}
+	
+	//can this JVM really run virtual threads?
+	public static boolean virtualAvailable() {
+		return ofVirtual != null;
+	}
+	
+	//the mode that will actually be used
+	public ThreadMode effective() {
+		return (this == VIRTUAL && !virtualAvailable()) ? PLATFORM : this;
+	}
+	
+	//start a thread of this kind running r
+	public Thread start(Runnable r, String name) {
+		if (effective() == VIRTUAL) {
+			try {
+				Object builder = builderName.invoke(ofVirtual.invoke(null), name);
+				return (Thread) builderStart.invoke(builder, r);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("could not start virtual thread", e);
+			}
+		}
+		Thread t = new Thread(r, name);
+		t.start();
+		return t;
+	}
+	
+	//parse "platform" or "virtual"
+	public static ThreadMode parse(String s) {
+		return valueOf(s.trim().toUpperCase());
+	}
+}
@@ -0,0 +1,58 @@
+//Compares platform and virtual threads for swimmer-like work: each thread repeatedly
+//takes a GridBlock, sleeps for a stroke and lets the block go.
+//Reports how long it takes to start the threads and how many moves per second they manage.
+package medleySimulation;
+
+public class ThreadModeComparison {
+	
+	private static final int steps = 20; //moves per swimmer
+	private static final long strokeMillis = 5; //sleep per move
+	
+	//run n swimmer-like threads in the given mode and print the timings
+	static void compare(ThreadMode mode, int n, StadiumGrid grid) throws InterruptedException {
+		Thread [] threads = new Thread[n];
+		long start = System.nanoTime();
+		int started = 0;
+		try {
+			for (; started < n; started++) {
+				final int id = started;
+				threads[started] = mode.start(() -> {
+					try {
+						for (int k = 0; k < steps; k++) {
+							GridBlock b = grid.whichBlock(id % grid.getMaxX(), (id / grid.getMaxX() + k) % grid.getMaxY());
+							b.acquire(id);
+							Thread.sleep(strokeMillis); //swim
+							b.release();
+						}
+					} catch (InterruptedException e) { //stopped early
+					}
+				}, "swimmer-" + id);
+			}
+		} catch (OutOfMemoryError e) { //out of native threads
+			System.out.println(mode.effective() + "\t" + n + "\tfailed after starting " + started + " threads: " + e.getMessage());
+			for (int i = 0; i < started; i++) threads[i].interrupt();
+			for (int i = 0; i < started; i++) threads[i].join();
+			return;
+		}
+		long startup = System.nanoTime() - start;
+		for (int i = 0; i < n; i++) threads[i].join();
+		long total = System.nanoTime() - start;
+		System.out.println(mode.effective() + "\t" + n + "\t" + startup / 1000000 + "\t" + total / 1000000
+				+ "\t" + String.format("%.0f", (double) n * steps * 1e9 / total));
+	}
+	
+	// usage: ThreadModeComparison [swimmer counts...]  default 10 1000 100000
+	public static void main(String[] args) throws InterruptedException {
+		int [] sizes = {10, 1000, 100000};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+		}
+		if (!ThreadMode.virtualAvailable()) System.out.println("virtual threads need Java 21+, VIRTUAL runs as PLATFORM here");
+		StadiumGrid grid = new StadiumGrid(new SimulationConfig(), RaceClock.WALL); //default stadium
+		System.out.println("mode\tswimmers\tstartup ms\ttotal ms\tmoves/s");
+		for (int n : sizes) {
+			for (ThreadMode mode : ThreadMode.values()) compare(mode, n, grid);
+		}
+	}
+}
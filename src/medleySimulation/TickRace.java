@@ -0,0 +1,317 @@
+//Class running a whole race on one thread, with no thread per swimmer.
+//Each swimmer is a small state machine following the same route and timings as Swimmer.
+//Swimmers wait on a timing wheel keyed by the millisecond of their next move, and every
+//millisecond the swimmers due are handled together, lowest ID first, so block conflicts
+//are settled the same way every time. Many races run side by side on BatchRunner's workers.
+package medleySimulation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class TickRace {
+
+	private static final int free = -1;
+	private static final int wheelSize = 1024; //longer than any single wait, in milliseconds
+	private static final int doorWait = 200; //looking around at the entrance
+
+	//what a swimmer is doing - the names follow Swimmer.run
+	private static final int ARRIVING = 0, WAIT_BLOCK = 1, ENTERING = 2, AT_DOOR = 3, WALKING = 4,
+			WAIT_TOUCH = 5, DIVING = 6, SWIM_OUT = 7, SWIM_BACK = 8, EXITING = 9, TO_BENCH = 10, DONE = 11;
+
+	private final SimulationConfig config;
+	private final int raceNumber;
+	private final int numTeams, teamSize, numSwimmers;
+	private final int maxX, maxY, startY;
+	private final int entrance; //cell of the entrance
+	private RaceLog log; //record the moves, if set
+
+	//the grid: owner of each cell (x*maxY + y), and a FIFO of swimmers waiting for it
+	private int [] owner;
+	private int [] waitHead, waitTail;
+
+	//per swimmer, indexed by ID
+	private int [] state;
+	private int [] cell; //where they are, or free
+	private int [] target; //cell they are trying to move to, or free
+	private int [] nextWaiter; //next in the same cell's wait queue
+	private int [] speed;
+	private int [] strokeWait; //milliseconds per stroke
+
+	private int [] stage; //per team: 2*leg+1 once a leg has dived, 2*leg+2 once it has touched, as in RelayBaton
+
+	//timing wheel: swimmers to handle at each millisecond, modulo wheelSize
+	private int [][] wheel;
+	private int [] wheelCount;
+	private int scheduled; //swimmers on the wheel
+	private int [] now; //swimmers to handle this millisecond, including those woken during it - grown by runNow
+	private int nowCount;
+
+	private long time; //simulated milliseconds
+	private int left; //swimmers not done yet
+	private boolean stalled;
+	private ResultsLedger ledger;
+	private long moves; //block moves made
+
+	TickRace(SimulationConfig config, int raceNumber) {
+		this.config=config;
+		this.raceNumber=raceNumber;
+		numTeams=config.numTeams;
+		teamSize=config.teamSize;
+		numSwimmers=numTeams*teamSize;
+		maxX=Math.max(5, config.gridX); //same limits as StadiumGrid
+		maxY=Math.max(5, config.gridY);
+		startY=maxY-config.startOffset;
+		entrance=cellOf(0, maxY-config.entranceOffset);
+	}
+
+	//record every move of the race
+	public void setLog(RaceLog log) {
+		this.log=log;
+	}
+
+	private int cellOf(int x, int y) { return x*maxY + y; }
+
+	private int xOf(int c) { return c / maxY; }
+
+	private int yOf(int c) { return c % maxY; }
+
+	//set up the stadium and swimmers - speeds and arrival times come from the race's seed as in HeadlessRace
+	private void setUp() {
+		owner = new int[maxX*maxY];
+		Arrays.fill(owner, free);
+		waitHead = new int[maxX*maxY];
+		Arrays.fill(waitHead, free);
+		waitTail = new int[maxX*maxY];
+		state = new int[numSwimmers];
+		cell = new int[numSwimmers];
+		Arrays.fill(cell, free);
+		target = new int[numSwimmers];
+		nextWaiter = new int[numSwimmers];
+		speed = new int[numSwimmers];
+		strokeWait = new int[numSwimmers];
+		stage = new int[numTeams];
+		wheel = new int[wheelSize][];
+		wheelCount = new int[wheelSize];
+		now = new int[Math.max(16, numSwimmers)];
+		ledger = new ResultsLedger(numTeams, teamSize);
+		left = numSwimmers;
+		SwimStroke [] strokes = SwimStroke.values();
+		Random rand = config.random(raceNumber);
+		for (int t = 0; t < numTeams; t++) {
+			Random teamRand = new Random(rand.nextLong());
+			for (int s = 0; s < teamSize; s++) {
+				int id = t*teamSize + s;
+				speed[id] = teamRand.nextInt(3)+30;
+				strokeWait[id] = (int) (speed[id]*strokes[s].getStrokeTime());
+				Random own = new Random(teamRand.nextLong());
+				state[id] = ARRIVING;
+				schedule(id, speed[id] + own.nextInt(10)); //arriving takes a while
+			}
+		}
+	}
+
+	//handle a swimmer after a delay in milliseconds
+	private void schedule(int id, int delay) {
+		if (delay >= wheelSize) throw new IllegalStateException("wait of " + delay + " ms is longer than the timing wheel");
+		if (delay <= 0) { //now, in this millisecond's batch
+			runNow(id);
+			return;
+		}
+		int slot = (int) ((time + delay) & (wheelSize-1));
+		if (wheel[slot] == null) wheel[slot] = new int[8];
+		else if (wheelCount[slot] == wheel[slot].length) wheel[slot] = Arrays.copyOf(wheel[slot], wheelCount[slot]*2);
+		wheel[slot][wheelCount[slot]++] = id;
+		scheduled++;
+	}
+
+	//handle a swimmer later in this millisecond - someone can be woken more than once in it, so the batch grows as needed
+	private void runNow(int id) {
+		if (nowCount == now.length) now = Arrays.copyOf(now, nowCount*2);
+		now[nowCount++] = id;
+	}
+
+	//run the race to the end - returns the winning team, or -1 if no-one finished
+	public int run() {
+		setUp();
+		while (left > 0) {
+			if (scheduled == 0) { //everyone left is waiting for someone else
+				stalled = true;
+				break;
+			}
+			int slot;
+			do { //next millisecond with someone due
+				time++;
+				slot = (int) (time & (wheelSize-1));
+			} while (wheelCount[slot] == 0);
+			int [] due = wheel[slot];
+			int n = wheelCount[slot];
+			Arrays.sort(due, 0, n); //lowest ID first
+			wheelCount[slot] = 0;
+			scheduled -= n;
+			for (int i = 0; i < n; i++) runNow(due[i]);
+			for (int i = 0; i < nowCount; i++) step(now[i]); //may add more to now
+			nowCount = 0;
+		}
+		return ledger.finished() > 0 ? ledger.teamAtPlace(1) : -1;
+	}
+
+	//a swimmer's wait is over - do the next thing
+	//states that finish at once run straight on into the next, so cases fall through on purpose
+	@SuppressWarnings("fallthrough")
+	private void step(int id) {
+		int team = id / teamSize, leg = id % teamSize;
+		switch (state[id]) {
+		case ARRIVING:
+			if (leg > 0 && stage[team] < 2*(leg-1)+1) { //previous swimmer still on the block
+				state[id] = WAIT_BLOCK;
+				return;
+			}
+			//fall through
+		case WAIT_BLOCK:
+			state[id] = ENTERING;
+			target[id] = entrance;
+			//fall through
+		case ENTERING:
+			if (!move(id)) return;
+			state[id] = AT_DOOR;
+			schedule(id, doorWait);
+			return;
+		case AT_DOOR:
+			state[id] = WALKING;
+			target[id] = free;
+			schedule(id, speed[id]*3); //not rushing
+			return;
+		case WALKING:
+			if (target[id] == free) target[id] = towards(cell[id], startBlock(team));
+			if (!move(id)) return;
+			if (cell[id] != startBlock(team)) {
+				target[id] = free;
+				schedule(id, speed[id]*3);
+				return;
+			}
+			if (leg > 0 && stage[team] < 2*(leg-1)+2) { //previous swimmer still swimming
+				state[id] = WAIT_TOUCH;
+				return;
+			}
+			//fall through
+		case WAIT_TOUCH:
+			ledger.recordDive(id, SwimStroke.values()[leg], time);
+			state[id] = DIVING;
+			target[id] = cellOf(xOf(cell[id]), yOf(cell[id])-2);
+			//fall through
+		case DIVING:
+			if (!move(id)) return;
+			stage[team] = 2*leg+1;
+			wake(id+1, WAIT_BLOCK, leg+1 < teamSize);
+			state[id] = SWIM_OUT;
+			target[id] = free;
+			//fall through
+		case SWIM_OUT:
+			if (yOf(cell[id]) != 0) {
+				if (target[id] == free) target[id] = towards(cell[id], cellOf(xOf(cell[id]), 0));
+				if (!move(id)) return;
+				target[id] = free;
+				schedule(id, strokeWait[id]); //swim
+				return;
+			}
+			state[id] = SWIM_BACK;
+			//fall through
+		case SWIM_BACK:
+			if (yOf(cell[id]) != startY-1) {
+				if (target[id] == free) target[id] = towards(cell[id], cellOf(xOf(cell[id]), startY));
+				if (!move(id)) return;
+				target[id] = free;
+				schedule(id, strokeWait[id]);
+				return;
+			}
+			ledger.recordTouch(id, time);
+			stage[team] = 2*leg+2;
+			wake(id+1, WAIT_TOUCH, leg+1 < teamSize);
+			if (leg == teamSize-1) { //anchor
+				ledger.recordTeamFinish(team, id, time);
+				done(id);
+				return;
+			}
+			state[id] = EXITING;
+			target[id] = towards(cell[id], cellOf(xOf(cell[id])+1, yOf(cell[id]))); //slightly offset
+			//fall through
+		case EXITING:
+			if (!move(id)) return;
+			state[id] = TO_BENCH;
+			target[id] = free;
+			//fall through
+		case TO_BENCH:
+			int bench = maxY - (leg+1); //they line up
+			if (yOf(cell[id]) == bench) {
+				done(id);
+				return;
+			}
+			if (target[id] == free) target[id] = towards(cell[id], cellOf(xOf(cell[id]), bench));
+			if (!move(id)) return;
+			target[id] = free;
+			schedule(id, speed[id]*3);
+			return;
+		default:
+			throw new IllegalStateException("swimmer " + id + " has finished");
+		}
+	}
+
+	//starting block for a team
+	private int startBlock(int team) {
+		return cellOf(team*config.laneWidth + 1, startY);
+	}
+
+	//the next cell from one cell towards another - x first, then y, as StadiumGrid.moveTowards
+	private int towards(int from, int to) {
+		int addX = Integer.signum(xOf(to)-xOf(from));
+		if (addX != 0) return from + addX*maxY;
+		return from + Integer.signum(yOf(to)-yOf(from));
+	}
+
+	//try to move onto the target cell - queues the swimmer on the cell and returns false if it is taken
+	private boolean move(int id) {
+		int c = target[id];
+		if (c == cell[id]) return true; //not actually moving
+		if (owner[c] != free) {
+			nextWaiter[id] = free;
+			if (waitHead[c] == free) waitHead[c] = id;
+			else nextWaiter[waitTail[c]] = id;
+			waitTail[c] = id;
+			return false;
+		}
+		owner[c] = id;
+		int old = cell[id];
+		cell[id] = c;
+		moves++;
+		if (log != null) log.move(time, id, xOf(c), yOf(c));
+		if (old != free) {
+			owner[old] = free;
+			int w = waitHead[old];
+			if (w != free) { //longest waiter tries again in this millisecond
+				waitHead[old] = nextWaiter[w];
+				runNow(w);
+			}
+		}
+		return true;
+	}
+
+	//the next swimmer in the team can carry on, if it was waiting for this
+	private void wake(int id, int waitingIn, boolean exists) {
+		if (exists && state[id] == waitingIn) runNow(id);
+	}
+
+	private void done(int id) {
+		state[id] = DONE;
+		left--;
+	}
+
+	public long getRaceTime() { return time; }
+
+	public boolean hasStalled() { return stalled; }
+
+	public ResultsLedger getLedger() { return ledger; }
+
+	public long getMoves() { return moves; }
+}
@@ -0,0 +1,125 @@
+//Reads a binary trace written by RaceTrace and prints what happened:
+//a summary line per swimmer and a histogram of block waits, or the full timeline of one swimmer.
+package medleySimulation;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TraceReader {
+	
+	private final long [] wall; //nanos since the trace started
+	private final long [] raceTime; //race clock milliseconds
+	private final long [] wait; //nanos spent getting the block, for moves
+	private final long [] event; //type<<56 | id<<32 | x<<16 | y
+	private final long dropped;
+	
+	TraceReader(String path) throws IOException {
+		try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			if (in.getInt() != RaceTrace.MAGIC) throw new IOException(path + " is not a race trace");
+			int version = in.getInt();
+			if (version != RaceTrace.VERSION) throw new IOException("unknown trace version " + version);
+			int n = (int) in.getLong();
+			dropped = in.getLong();
+			wall = new long[n];
+			raceTime = new long[n];
+			wait = new long[n];
+			event = new long[n];
+			for (int i = 0; i < n; i++) {
+				wall[i] = in.getLong();
+				raceTime[i] = in.getLong();
+				wait[i] = in.getLong();
+				event[i] = in.getLong();
+			}
+		}
+	}
+	
+	public int size() { return wall.length; }
+	
+	public long getDropped() { return dropped; }
+	
+	private int type(int i) { return (int) (event[i] >>> 56); }
+	
+	private int id(int i) { return (int) (event[i] >>> 32) & 0xffffff; }
+	
+	private int x(int i) { return (int) (event[i] >>> 16) & 0xffff; }
+	
+	private int y(int i) { return (int) event[i] & 0xffff; }
+	
+	//every event of one swimmer, in order
+	public void timeline(PrintStream out, int who) {
+		out.println("race ms\twall us\tevent\tx\ty\twait us");
+		for (int i = 0; i < size(); i++) {
+			if (id(i) != who) continue;
+			out.println(raceTime[i] + "\t" + wall[i]/1000 + "\t" + RaceTrace.EVENT_NAMES[type(i)] + "\t" + x(i) + "\t" + y(i)
+					+ "\t" + (type(i) == RaceTrace.MOVE ? String.format("%.1f", wait[i]/1000.0) : ""));
+		}
+	}
+	
+	//one line per swimmer: moves, when each stage happened and how long it spent waiting for blocks
+	public void summary(PrintStream out) {
+		Map<Integer, long[]> swimmers = new TreeMap<Integer, long[]>(); //moves, first, dive, touch, total wait, max wait
+		for (int i = 0; i < size(); i++) {
+			long [] s = swimmers.computeIfAbsent(id(i), k -> new long[] {0, -1, -1, -1, 0, 0});
+			switch (type(i)) {
+			case RaceTrace.MOVE:
+				if (s[1] < 0) s[1] = raceTime[i];
+				s[0]++;
+				s[4] += wait[i];
+				s[5] = Math.max(s[5], wait[i]);
+				break;
+			case RaceTrace.DIVE: s[2] = raceTime[i]; break;
+			case RaceTrace.TOUCH: s[3] = raceTime[i]; break;
+			}
+		}
+		out.println("id\tmoves\tentered\tdived\ttouched\twait us\tmax wait us");
+		for (Map.Entry<Integer, long[]> e : swimmers.entrySet()) {
+			long [] s = e.getValue();
+			out.println(e.getKey() + "\t" + s[0] + "\t" + s[1] + "\t" + s[2] + "\t" + s[3] + "\t" + s[4]/1000 + "\t" + s[5]/1000);
+		}
+		for (int i = 0; i < size(); i++) {
+			if (type(i) == RaceTrace.FINISH) out.println("finish: swimmer " + id(i) + " at " + raceTime[i] + " ms");
+		}
+	}
+	
+	//block waits in power-of-two buckets of microseconds
+	public void waitHistogram(PrintStream out) {
+		long [] buckets = new long[40];
+		long moves = 0;
+		for (int i = 0; i < size(); i++) {
+			if (type(i) != RaceTrace.MOVE) continue;
+			buckets[64 - Long.numberOfLeadingZeros(wait[i]/1000)]++; //0 is under 1us
+			moves++;
+		}
+		int last = buckets.length-1;
+		while (last > 0 && buckets[last] == 0) last--;
+		out.println("block wait\tmoves");
+		for (int b = 0; b <= last; b++) {
+			String range = b == 0 ? "<1us" : "<" + (1L << b) + "us";
+			int bar = (int) (60 * buckets[b] / Math.max(1, moves));
+			out.println(range + "\t" + buckets[b] + "\t" + "#".repeat(bar));
+		}
+	}
+	
+	// usage: TraceReader trace-file [swimmer-id]
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: TraceReader trace-file [swimmer-id]");
+			System.exit(1);
+		}
+		TraceReader trace = new TraceReader(args[0]);
+		System.out.println(trace.size() + " events, " + trace.getDropped() + " dropped");
+		if (args.length > 1) {
+			trace.timeline(System.out, Integer.parseInt(args[1]));
+		} else {
+			trace.summary(System.out);
+			trace.waitHistogram(System.out);
+		}
+	}
+}
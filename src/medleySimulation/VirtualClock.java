@@ -0,0 +1,143 @@
+//Class for a simulated clock, so that races can run without really sleeping.
+//Time only moves forward when every swimmer is either asleep or blocked:
+//it then jumps straight to the earliest wake-up time.
+package medleySimulation;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+public class VirtualClock extends RaceClock {
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition tick = lock.newCondition(); //signalled whenever time moves or the race ends
+	
+	private final PriorityQueue<Sleeper> sleepers = new PriorityQueue<Sleeper>((a,b) -> Long.compare(a.wake, b.wake));
+	private long now; //simulated milliseconds
+	private int participants; //swimmer threads still in the race
+	private int running; //participants neither asleep nor blocked
+	private boolean stalled; //everyone is blocked and no-one is asleep - nothing can ever move again
+	private BooleanSupplier stallHandler; //gets a chance to free someone before the race is given up
+	
+	private static class Sleeper {
+		final long wake;
+		boolean woken;
+		Sleeper(long wake) { this.wake=wake; }
+	}
+	
+	@Override
+	public long now() {
+		lock.lock();
+		try { return now; } finally { lock.unlock(); }
+	}
+	
+	@Override
+	public void sleep(long millis) throws InterruptedException {
+		lock.lock();
+		try {
+			if (stalled) throw new InterruptedException("race stalled");
+			Sleeper me = new Sleeper(now+millis);
+			sleepers.add(me);
+			running--;
+			advanceIfIdle();
+			try {
+				while (!me.woken && !stalled) tick.await();
+			} catch (InterruptedException e) {
+				if (!me.woken) { //nobody counted us back in
+					sleepers.remove(me);
+					running++;
+				}
+				throw e;
+			}
+			if (!me.woken) throw new InterruptedException("race stalled");
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void join() {
+		lock.lock();
+		try {
+			participants++;
+			running++;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void leave() {
+		lock.lock();
+		try {
+			participants--;
+			running--;
+			if (participants==0) tick.signalAll();
+			else advanceIfIdle();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void idle() {
+		lock.lock();
+		try {
+			running--;
+			advanceIfIdle();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void busy() {
+		lock.lock();
+		try {
+			running++;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void setStallHandler(BooleanSupplier handler) {
+		lock.lock();
+		try { stallHandler = handler; } finally { lock.unlock(); }
+	}
+	
+	@Override
+	public boolean awaitEnd() throws InterruptedException {
+		lock.lock();
+		try {
+			while (participants>0 && !stalled) tick.await();
+			return !stalled;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	//has the race stalled?
+	public boolean isStalled() {
+		lock.lock();
+		try { return stalled; } finally { lock.unlock(); }
+	}
+	
+	//called with the lock held: if nobody can move, jump to the next wake-up
+	private void advanceIfIdle() {
+		if (running>0 || participants==0) return;
+		if (sleepers.isEmpty()) {
+			if (stallHandler!=null && stallHandler.getAsBoolean()) return; //someone was freed, and counted back in
+			stalled = true; //all blocked on each other
+			tick.signalAll();
+			return;
+		}
+		now = sleepers.peek().wake;
+		while (!sleepers.isEmpty() && sleepers.peek().wake<=now) {
+			sleepers.poll().woken = true;
+			running++;
+		}
+		tick.signalAll();
+	}
+}
@@ -0,0 +1,39 @@
+//Tests for DeckRouter: routes on the deck, and route tables shared by grids with the same deck.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class DeckRouterTest {
+
+	@Test
+	void sharedByLayout() {
+		DeckRouter r = DeckRouter.forDeck(30, 60, 40, 5);
+		assertSame(r, DeckRouter.forDeck(30, 60, 40, 5));
+		assertNotSame(r, DeckRouter.forDeck(30, 60, 41, 5));
+		assertNotSame(r, DeckRouter.forDeck(30, 60, 40, 6));
+		int before = r.getTables();
+		DeckRouter.forDeck(30, 60, 40, 5).nextHop(20, 50, 1, 40, false);
+		r.nextHop(21, 55, 1, 40, false); //same destination - no new table
+		assertEquals(before+1, r.getTables());
+	}
+
+	//walking hop by hop reaches the starting block, in the fewest steps round the other lanes' blocks
+	@Test
+	void walksToStartingBlock() {
+		DeckRouter r = new DeckRouter(30, 60, 40, 5);
+		int i = 20, j = 50, steps = 0;
+		while (i!=1 || j!=40) {
+			int hop = r.nextHop(i, j, 1, 40, false);
+			assertEquals(1, Math.abs(r.hopX(hop)-i)+Math.abs(r.hopY(hop)-j));
+			i = r.hopX(hop);
+			j = r.hopY(hop);
+			steps++;
+			if (j==40) assertEquals(1, i); //only our own starting block is in the top row
+		}
+		assertEquals(19+10, steps);
+	}
+}
@@ -0,0 +1,88 @@
+//Tests for Gate: people are let in in the order they arrived, and someone who gives up
+//queueing does not hold up those behind them.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class GateTest {
+
+	private static final int inside = 999; //whoever is on the gate block when the queue forms
+
+	//queue people at the gate one after another - each has their ticket before the next arrives
+	//once in they note their ID and step off the gate block
+	private static Thread [] queue(Gate gate, int people, List<Integer> admitted) throws InterruptedException {
+		Thread [] t = new Thread[people];
+		for (int id = 0; id < people; id++) {
+			int me = id;
+			t[id] = new Thread(() -> {
+				try {
+					GridBlock in = gate.admit(me, RaceClock.WALL, null);
+					admitted.add(me);
+					in.release();
+				} catch (InterruptedException e) {
+					//gave up
+				}
+			}, "arrival-"+id);
+			t[id].start();
+			while (gate.getQueued()<id+1) Thread.sleep(1); //ticket taken
+		}
+		return t;
+	}
+
+	private static void awaitAll(Thread [] t) throws InterruptedException {
+		for (Thread th : t) {
+			th.join(10000);
+			assertFalse(th.isAlive(), th.getName()+" still queueing");
+		}
+	}
+
+	@Test
+	void admittedInArrivalOrder() throws Exception {
+		GridBlock block = new GridBlock(0, 10, false);
+		Gate gate = new Gate(0, block);
+		assertTrue(block.get(inside));
+		List<Integer> admitted = Collections.synchronizedList(new ArrayList<Integer>());
+		Thread [] t = queue(gate, 50, admitted);
+		assertEquals(50, gate.getQueued());
+		block.release(); //let them in
+		awaitAll(t);
+
+		List<Integer> arrived = new ArrayList<Integer>();
+		for (int id = 0; id < 50; id++) arrived.add(id);
+		assertEquals(arrived, admitted);
+		assertEquals(50, gate.getArrivals());
+		assertEquals(50, gate.getAdmissions());
+		assertEquals(0, gate.getQueued());
+		assertEquals(50, gate.getLongestQueue());
+	}
+
+	//someone near the front gives up - their turn is skipped, and the rest still go in order
+	@Test
+	void abandonedTicketSkipped() throws Exception {
+		GridBlock block = new GridBlock(0, 10, false);
+		Gate gate = new Gate(0, block);
+		assertTrue(block.get(inside));
+		List<Integer> admitted = Collections.synchronizedList(new ArrayList<Integer>());
+		Thread [] t = queue(gate, 6, admitted);
+		t[2].interrupt();
+		t[2].join(10000);
+		assertFalse(t[2].isAlive());
+		block.release();
+		awaitAll(t);
+
+		assertEquals(Arrays.asList(0, 1, 3, 4, 5), admitted);
+		assertEquals(6, gate.getArrivals());
+		assertEquals(5, gate.getAdmissions());
+		assertEquals(0, gate.getQueued());
+		assertFalse(block.occupied());
+	}
+}
@@ -0,0 +1,121 @@
+//Tests for GridBlock ownership: one owner at a time, however many threads want the block,
+//and a version stamp that moves on with every change of owner.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class GridBlockTest {
+
+	private static final int threads = 8;
+	private static final int rounds = 20000; //times each thread takes the block
+
+	//threads take and release one block as fast as they can, half spinning on get() and half parking in acquire()
+	//nobody may find someone else inside while they hold it
+	@Test
+	void oneOwnerUnderContention() throws Exception {
+		GridBlock block = new GridBlock(0, 0, false);
+		AtomicInteger inside = new AtomicInteger(-1);
+		AtomicInteger clashes = new AtomicInteger();
+		CountDownLatch go = new CountDownLatch(1);
+		Thread [] t = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			int id = i;
+			t[i] = new Thread(() -> {
+				try {
+					go.await();
+					for (int r = 0; r < rounds; r++) {
+						if (id%2==0) while (!block.get(id)) Thread.onSpinWait();
+						else block.acquire(id);
+						if (!inside.compareAndSet(-1, id) || block.owner()!=id) clashes.incrementAndGet();
+						inside.set(-1);
+						block.release();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			t[i].start();
+		}
+		go.countDown();
+		for (Thread th : t) th.join(60000);
+		for (Thread th : t) assertFalse(th.isAlive(), "a thread is stuck waiting for the block");
+		assertEquals(0, clashes.get());
+		assertFalse(block.occupied());
+		assertEquals(2*threads*rounds, block.version()); //every take and every release counted, none lost
+		assertEquals(threads*rounds, block.getAcquires());
+	}
+
+	//a parked waiter gets the block when the owner releases it
+	@Test
+	void releaseWakesWaiter() throws Exception {
+		GridBlock block = new GridBlock(0, 0, false);
+		assertTrue(block.get(1));
+		Thread waiter = new Thread(() -> {
+			try {
+				block.acquire(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		waiter.start();
+		while (waiter.getState()!=Thread.State.WAITING) Thread.onSpinWait(); //parked
+		block.release();
+		waiter.join(10000);
+		assertFalse(waiter.isAlive());
+		assertEquals(2, block.owner());
+	}
+
+	@Test
+	void releaseAndVersion() throws Exception {
+		GridBlock block = new GridBlock(3, 4, false);
+		assertEquals(-1, block.owner());
+		assertEquals(0, block.version());
+		assertTrue(block.get(7));
+		assertEquals(7, block.owner());
+		assertEquals(1, block.version());
+		assertTrue(block.get(7)); //already ours - no change
+		assertEquals(1, block.version());
+		assertFalse(block.get(8));
+		assertEquals(1, block.getFailedAttempts());
+		block.release();
+		assertFalse(block.occupied());
+		assertEquals(2, block.version());
+		block.release(); //already free - no change
+		assertEquals(2, block.version());
+		assertTrue(block.get(8));
+		assertEquals(3, block.version());
+	}
+
+	//the compact grid keeps an 8 bit version - it wraps to 0 without touching the owner bits beside it
+	@Test
+	void compactVersionWraps() {
+		CompactGrid grid = new CompactGrid(10, 10, 5, 5, 0, 8);
+		GridBlock block = grid.block(2, 2);
+		GridBlock next = grid.block(2, 3);
+		int id = CompactGrid.maxOwners-1; //largest ID a compact grid takes
+		for (int r = 0; r < 127; r++) {
+			assertTrue(block.get(r));
+			block.release();
+		}
+		assertEquals(254, block.version());
+		assertTrue(block.get(id));
+		assertEquals(255, block.version());
+		assertEquals(id, block.owner());
+		block.release();
+		assertEquals(0, block.version()); //wrapped
+		assertFalse(block.occupied());
+		assertTrue(block.get(id));
+		assertEquals(1, block.version());
+		assertEquals(id, block.owner());
+		assertFalse(block.get(0));
+		assertFalse(next.occupied());
+		assertEquals(0, next.version());
+	}
+}
@@ -0,0 +1,88 @@
+//Tests for LaneReservation: how many blocks a swimmer holds as it swims along its lane.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class LaneReservationTest {
+
+	private static final int id = 3;
+	private static final int window = 4;
+
+	private static StadiumGrid stadium(boolean compact) throws InterruptedException {
+		return new StadiumGrid(20, 40, 1, 5, 5, 5, compact, RaceClock.WALL);
+	}
+
+	//blocks in column x the swimmer owns
+	private static int held(StadiumGrid stadium, int x) {
+		int n = 0;
+		for (int j = 0; j < stadium.getMaxY(); j++) if (stadium.whichBlock(x, j).owner()==id) n++;
+		return n;
+	}
+
+	//a dive off the starting block and a length there and back, as Swimmer swims it
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	void holdsAtMostTwoWindows(boolean compact) throws Exception {
+		StadiumGrid stadium = stadium(compact);
+		PeopleLocation who = new PeopleLocation(id, Color.red);
+		GridBlock start = stadium.whichBlock(1, stadium.getStartY());
+		assertTrue(start.get(id));
+		int x = start.getX();
+
+		LaneReservation lane = new LaneReservation(stadium, start, start.getY()-2, 0, who, window);
+		GridBlock current = lane.step(); //the dive
+		assertEquals(start.getY()-2, current.getY());
+		assertFalse(start.occupied(), "starting block kept after the dive");
+		while (current.getY()!=0) {
+			current = lane.step();
+			assertEquals(id, current.owner());
+			assertTrue(held(stadium, x)<=2*window, held(stadium, x)+" blocks held at row "+current.getY());
+		}
+		assertSame(current, lane.finish());
+		assertEquals(1, held(stadium, x)); //only the block at the wall
+
+		int back = stadium.getStartY()-1;
+		lane = new LaneReservation(stadium, current, 1, back, who, window);
+		while (current.getY()!=back) {
+			current = lane.step();
+			assertTrue(held(stadium, x)<=2*window, held(stadium, x)+" blocks held at row "+current.getY());
+		}
+		assertTrue(lane.done());
+		lane.finish();
+		assertEquals(1, held(stadium, x));
+		assertEquals(id, stadium.whichBlock(x, back).owner());
+	}
+
+	//a reservation stops short of a block someone else has, and carries on once it is free
+	@ParameterizedTest
+	@ValueSource(booleans = {false, true})
+	void stopsAtTakenBlock(boolean compact) throws Exception {
+		StadiumGrid stadium = stadium(compact);
+		PeopleLocation who = new PeopleLocation(id, Color.red);
+		GridBlock from = stadium.whichBlock(1, 20);
+		assertTrue(from.get(id));
+		GridBlock taken = stadium.whichBlock(1, 18);
+		assertTrue(taken.get(id+1));
+
+		LaneReservation lane = new LaneReservation(stadium, from, 19, 0, who, window);
+		GridBlock current = lane.step();
+		assertEquals(19, current.getY());
+		assertEquals(1, held(stadium, 1)); //nothing reserved past the block ahead
+		for (int j = 0; j < 18; j++) assertFalse(stadium.whichBlock(1, j).owner()==id);
+
+		taken.release();
+		current = lane.step();
+		assertEquals(18, current.getY());
+		assertTrue(held(stadium, 1)<=2*window);
+		lane.finish();
+		assertEquals(1, held(stadium, 1));
+	}
+}
@@ -0,0 +1,97 @@
+//Tests for RelayBaton: a leg waits for the one before it to dive and to touch, and only a
+//swimmer already waiting at the touch counts towards handoff latency.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class RelayBatonTest {
+
+	private interface Wait {
+		void run() throws InterruptedException;
+	}
+
+	//wait on the baton on another thread
+	private static CompletableFuture<Void> waiting(Wait w) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				w.run();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}, r -> new Thread(r).start());
+	}
+
+	//still waiting after a moment?
+	private static boolean blocked(CompletableFuture<Void> f) throws InterruptedException {
+		Thread.sleep(50);
+		return !f.isDone();
+	}
+
+	@Test
+	void legsWaitTheirTurn() throws Exception {
+		RelayBaton baton = new RelayBaton(RaceClock.WALL);
+		baton.awaitBlock(0); //the first leg never waits
+		baton.awaitTouch(0);
+
+		CompletableFuture<Void> toBlock = waiting(() -> baton.awaitBlock(1));
+		assertTrue(blocked(toBlock));
+		baton.dived(0);
+		toBlock.get(10, TimeUnit.SECONDS);
+
+		CompletableFuture<Void> toDive = waiting(() -> baton.awaitTouch(1));
+		CompletableFuture<Void> third = waiting(() -> baton.awaitBlock(2));
+		assertTrue(blocked(toDive));
+		assertTrue(blocked(third));
+		baton.touched(0);
+		toDive.get(10, TimeUnit.SECONDS);
+		assertTrue(blocked(third)); //needs leg 1 in the water
+		baton.dived(1);
+		third.get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void latencyOnlyForWaitingSwimmers() throws Exception {
+		RelayBaton baton = new RelayBaton(RaceClock.WALL);
+		baton.dived(0);
+		CompletableFuture<Void> ready = waiting(() -> baton.awaitTouch(1));
+		assertTrue(blocked(ready));
+		baton.touched(0);
+		ready.get(10, TimeUnit.SECONDS);
+		assertEquals(1, baton.getHandoffs());
+		assertTrue(baton.getMeanHandoffNanos()>0);
+
+		baton.dived(1);
+		baton.touched(1);
+		Thread.sleep(50); //leg 2 turns up well after the touch
+		baton.awaitTouch(2);
+		assertEquals(1, baton.getHandoffs(), "a late arrival counted as a handoff");
+	}
+
+	//on the virtual clock a swimmer waiting on the baton is idle, so the race can move on without it
+	@Test
+	void waitingSwimmerIsIdle() throws Exception {
+		VirtualClock clock = new VirtualClock();
+		RelayBaton baton = new RelayBaton(clock);
+		clock.join(); //the swimmer waiting for the touch
+		clock.join(); //the one swimming
+		CompletableFuture<Void> next = waiting(() -> {
+			baton.awaitTouch(1);
+			clock.leave();
+		});
+		clock.sleep(500); //only moves on once the waiter is idle
+		assertEquals(500, clock.now());
+		assertFalse(next.isDone());
+		baton.dived(0);
+		baton.touched(0);
+		next.get(10, TimeUnit.SECONDS);
+		clock.leave();
+		assertTrue(clock.awaitEnd());
+	}
+}
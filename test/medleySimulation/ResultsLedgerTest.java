@@ -0,0 +1,85 @@
+//Tests for ResultsLedger: places and splits stay consistent when many teams finish at once.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+class ResultsLedgerTest {
+
+	private static final int teams = 64;
+	private static final int teamSize = 4;
+
+	//every team's last swimmer touches and finishes together - each gets its own place, and every place reads back whole
+	@Test
+	void simultaneousFinishers() throws Exception {
+		ResultsLedger ledger = new ResultsLedger(teams, teamSize);
+		SwimStroke [] strokes = SwimStroke.values();
+		int [] placeOfTeam = new int[teams];
+		CountDownLatch go = new CountDownLatch(1);
+		Thread [] t = new Thread[teams];
+		for (int team = 0; team < teams; team++) {
+			int tm = team;
+			t[team] = new Thread(() -> {
+				try {
+					go.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int leg = 0; leg < teamSize; leg++) {
+					int swimmer = tm*teamSize+leg;
+					ledger.recordDive(swimmer, strokes[leg], 1000L*leg + tm);
+					ledger.recordTouch(swimmer, 1000L*(leg+1) + 2*tm); //split is 1000+tm
+				}
+				placeOfTeam[tm] = ledger.recordTeamFinish(tm, tm*teamSize+teamSize-1, 5000L + tm);
+			});
+			t[team].start();
+		}
+		go.countDown();
+		for (Thread th : t) th.join(10000);
+		for (Thread th : t) assertFalse(th.isAlive());
+
+		assertEquals(teams, ledger.finished());
+		boolean [] taken = new boolean[teams+1];
+		for (int team = 0; team < teams; team++) {
+			int place = placeOfTeam[team];
+			assertTrue(place>=1 && place<=teams, "place out of range: "+place);
+			assertFalse(taken[place], "place "+place+" given twice");
+			taken[place] = true;
+			assertEquals(place, ledger.placeOf(team));
+			assertEquals(team, ledger.teamAtPlace(place));
+			assertEquals(team*teamSize+teamSize-1, ledger.swimmerAtPlace(place));
+			assertEquals(5000L + team, ledger.timeAtPlace(place));
+		}
+		int [] order = ledger.placings(teams);
+		for (int p = 0; p < teams; p++) assertEquals(order[p], ledger.teamAtPlace(p+1));
+
+		for (int s = 0; s < teams*teamSize; s++) {
+			int team = s/teamSize;
+			assertEquals(ledger.getLegFinish(s)-ledger.getLegStart(s), ledger.getSplit(s));
+			assertEquals(1000L + team, ledger.getSplit(s));
+		}
+	}
+
+	@Test
+	void unfinishedLegsAndTeams() {
+		ResultsLedger ledger = new ResultsLedger(2, teamSize);
+		assertEquals(0, ledger.finished());
+		assertEquals(-1, ledger.placeOf(0));
+		assertEquals(-1, ledger.getSplit(0)); //not started
+		ledger.recordDive(0, SwimStroke.Backstroke, 10);
+		assertEquals(-1, ledger.getSplit(0)); //in the water
+		ledger.recordTouch(0, 35);
+		assertEquals(25, ledger.getSplit(0));
+		assertEquals(1, ledger.recordTeamFinish(1, 7, 90));
+		assertEquals(1, ledger.finished());
+		assertEquals(1, ledger.placeOf(1));
+		assertEquals(-1, ledger.placeOf(0));
+	}
+}
@@ -0,0 +1,123 @@
+//Tests for SnapshotPublisher: the snapshot the renderer holds never changes under it, and
+//blocks people move between are marked for repainting.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class SnapshotPublisherTest {
+
+	private static final int width = 20, people = 8;
+
+	private static GridBlock [][] grid() throws InterruptedException {
+		GridBlock [][] g = new GridBlock[width][people];
+		for (int i = 0; i < width; i++) for (int j = 0; j < people; j++) g[i][j] = new GridBlock(i, j, false);
+		return g;
+	}
+
+	private static PeopleLocation [] inPool(GridBlock [][] g) {
+		PeopleLocation [] p = new PeopleLocation[people];
+		for (int i = 0; i < people; i++) {
+			p[i] = new PeopleLocation(i, Color.red);
+			p[i].setLocation(g[0][i]);
+			p[i].setInStadium(true);
+		}
+		return p;
+	}
+
+	private static int [] cells(StadiumSnapshot s) {
+		int [] c = new int[s.size()];
+		for (int i = 0; i < c.length; i++) c[i] = s.getCell(i);
+		return c;
+	}
+
+	//the publisher skips a tick rather than refill the snapshot being drawn
+	@Test
+	void pinnedSnapshotNotReused() throws Exception {
+		GridBlock [][] g = grid();
+		PeopleLocation [] p = inPool(g);
+		SnapshotPublisher pub = new SnapshotPublisher(p, 30);
+		assertTrue(pub.publish());
+		StadiumSnapshot drawing = pub.acquire();
+		p[0].setLocation(g[5][0]);
+		assertTrue(pub.publish()); //into the other buffer
+		assertFalse(pub.publish()); //the only free one is being drawn
+		assertEquals(1, pub.getSkipped());
+		assertEquals(0, drawing.getX(0)); //untouched
+		long drawn = drawing.getTick();
+		pub.release();
+		assertTrue(pub.publish()); //refills the one let go of
+		StadiumSnapshot next = pub.acquire();
+		assertTrue(next.getTick()>drawn);
+		assertEquals(5, next.getX(0));
+		assertSame(next, pub.acquire()); //nothing published since
+		pub.release();
+	}
+
+	//someone who moves marks where they were and where they are now, and nothing else
+	@Test
+	void movesMarkBothBlocks() throws Exception {
+		GridBlock [][] g = grid();
+		PeopleLocation [] p = inPool(g);
+		SnapshotPublisher pub = new SnapshotPublisher(p, 30);
+		DirtyRegions dirty = new DirtyRegions(width, people);
+		pub.setDirtyRegions(dirty);
+		p[3].setLocation(g[4][3]);
+		p[6].setInStadium(false); //left - only the block they were on
+		pub.publish();
+		Set<String> marked = new HashSet<String>();
+		assertEquals(3, dirty.drain((x,y) -> marked.add(x+","+y)));
+		assertEquals(Set.of("0,3", "4,3", "0,6"), marked);
+		pub.publish(); //nobody moved
+		assertEquals(0, dirty.drain((x,y) -> {}));
+	}
+
+	//people keep moving and the publisher keeps publishing while the renderer reads snapshots
+	//a snapshot read twice while pinned must read the same both times
+	@Test
+	void snapshotStableWhileDrawn() throws Exception {
+		GridBlock [][] g = grid();
+		PeopleLocation [] p = inPool(g);
+		SnapshotPublisher pub = new SnapshotPublisher(p, 30);
+		Thread mover = new Thread(() -> {
+			for (int step = 0; !Thread.currentThread().isInterrupted(); step++) {
+				for (int i = 0; i < people; i++) p[i].setLocation(g[(step+i)%width][i]);
+			}
+		});
+		Thread publisher = new Thread(() -> {
+			while (!Thread.currentThread().isInterrupted()) pub.publish();
+		});
+		mover.start();
+		publisher.start();
+		try {
+			long ticks = -1;
+			int changed = 0;
+			for (int frame = 0; frame < 500; frame++) {
+				StadiumSnapshot s = pub.acquire();
+				int [] first = cells(s);
+				long tick = s.getTick();
+				Thread.yield(); //give the publisher a chance to get at it
+				assertArrayEquals(first, cells(s), "snapshot changed while drawn");
+				assertEquals(tick, s.getTick());
+				if (tick!=ticks) changed++;
+				ticks = tick;
+				pub.release();
+			}
+			assertTrue(changed>1, "renderer never saw a new snapshot");
+		} finally {
+			mover.interrupt();
+			publisher.interrupt();
+			mover.join();
+			publisher.join();
+		}
+	}
+}
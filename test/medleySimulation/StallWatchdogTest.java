@@ -0,0 +1,97 @@
+//Tests for StallWatchdog: a headless race in which two swimmers wait on each other's blocks
+//goes on, rather than stalling, even when neither of them can step aside.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+
+class StallWatchdogTest {
+
+	private interface Move {
+		void run() throws InterruptedException;
+	}
+
+	private static StadiumGrid stadium(VirtualClock clock) throws Exception {
+		SimulationConfig config = SimulationConfig.load(new String[] {"--teams=1", "--gridX=20", "--gridY=40", "--startOffset=10", "--entranceOffset=6", "--laneWindow=4"});
+		return new StadiumGrid(config, clock);
+	}
+
+	//both moves in the race at once - true if the race ran to the end rather than stalling
+	private static boolean race(VirtualClock clock, Move a, Move b) throws Exception {
+		Thread [] t = new Thread[2];
+		Move [] moves = {a, b};
+		for (int i = 0; i < 2; i++) {
+			Move m = moves[i];
+			clock.join();
+			t[i] = new Thread(() -> {
+				try {
+					m.run();
+				} catch (InterruptedException e) {
+					//race stalled
+				} finally {
+					clock.leave();
+				}
+			});
+		}
+		for (Thread th : t) th.start();
+		boolean finished = clock.awaitEnd();
+		for (Thread th : t) th.join(10000);
+		for (Thread th : t) assertFalse(th.isAlive());
+		return finished;
+	}
+
+	//a swimmer dives for a lane block held by one jumping back onto the starting block
+	@Test
+	void deadlockAtDive() throws Exception {
+		VirtualClock clock = new VirtualClock();
+		StadiumGrid stadium = stadium(clock);
+		PeopleLocation diver = new PeopleLocation(1, Color.red), other = new PeopleLocation(2, Color.blue);
+		GridBlock start = stadium.returnStartingBlock(0);
+		int x = start.getX(), y = start.getY();
+		GridBlock water = stadium.whichBlock(x, y-2);
+		assertTrue(start.get(1));
+		assertTrue(water.get(2));
+		LaneReservation lane = stadium.reserveLane(start, y-2, 0, diver);
+		GridBlock [] at = new GridBlock[2];
+
+		assertTrue(race(clock, () -> at[0] = lane.step(), () -> at[1] = stadium.jumpTo(water, x, y, other)));
+		assertEquals(1, stadium.getDeadlocksBroken());
+		assertEquals(water, at[0]);
+		assertEquals(start, at[1]);
+		assertEquals(1, water.owner());
+		assertEquals(2, start.owner());
+	}
+
+	//two swimmers meet head on in a lane, each wanting the block the other is on
+	@Test
+	void deadlockInLane() throws Exception {
+		VirtualClock clock = new VirtualClock();
+		StadiumGrid stadium = stadium(clock);
+		PeopleLocation down = new PeopleLocation(1, Color.red), up = new PeopleLocation(2, Color.blue);
+		int x = stadium.returnStartingBlock(0).getX();
+		GridBlock a = stadium.whichBlock(x, 10), b = stadium.whichBlock(x, 9);
+		assertTrue(a.get(1));
+		assertTrue(b.get(2));
+		LaneReservation laneDown = stadium.reserveLane(a, 9, 0, down);
+		LaneReservation laneUp = stadium.reserveLane(b, 10, 20, up);
+		GridBlock [] at = new GridBlock[2];
+
+		assertTrue(race(clock, () -> at[0] = laneDown.step(), () -> at[1] = laneUp.step()));
+		assertEquals(1, stadium.getDeadlocksBroken());
+		assertEquals(b, at[0]);
+		assertEquals(a, at[1]);
+		assertEquals(1, b.owner());
+		assertEquals(2, a.owner());
+		//the swimmer that gave way does not hand back the block it let go of
+		laneUp.finish();
+		assertEquals(1, b.owner());
+		laneDown.finish();
+		assertEquals(1, b.owner());
+		assertEquals(2, a.owner());
+	}
+}
@@ -0,0 +1,71 @@
+//Tests for TickRace: a seeded race on one thread comes out the same every time, finishes,
+//and never puts two swimmers on one block.
+package medleySimulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class TickRaceTest {
+
+	private static TickRace race(String... args) throws Exception {
+		return new TickRace(SimulationConfig.load(args), 0);
+	}
+
+	private static RaceLog run(TickRace race) {
+		RaceLog log = new RaceLog();
+		race.setLog(log);
+		race.run();
+		return log;
+	}
+
+	@Test
+	void seededRaceRepeats() throws Exception {
+		TickRace a = race("--seed=42"), b = race("--seed=42"), c = race("--seed=43");
+		RaceLog la = run(a), lb = run(b), lc = run(c);
+		assertEquals(la.size(), lb.size());
+		assertEquals(la.checksum(), lb.checksum());
+		assertEquals(a.getRaceTime(), b.getRaceTime());
+		for (int s = 0; s < 40; s++) assertEquals(a.getLedger().getSplit(s), b.getLedger().getSplit(s));
+		assertNotEquals(la.checksum(), lc.checksum()); //the seed does matter
+	}
+
+	//every team finishes, every leg is swum, and no move is onto a block someone else is on
+	@Test
+	void oneSwimmerPerBlock() throws Exception {
+		TickRace race = race("--seed=7");
+		RaceLog log = run(race);
+		assertFalse(race.hasStalled());
+		assertEquals(10, race.getLedger().finished());
+		for (int s = 0; s < 40; s++) assertTrue(race.getLedger().getSplit(s)>0, "swimmer "+s+" has no split");
+		assertEquals(race.getMoves(), log.size());
+
+		Map<Integer, Integer> holder = new HashMap<Integer, Integer>(); //block (x<<16|y) to person on it
+		Map<Integer, Integer> at = new HashMap<Integer, Integer>(); //person to their block
+		for (int i = 0; i < log.size(); i++) {
+			int p = log.getPerson(i);
+			Integer from = at.remove(p);
+			if (from!=null) holder.remove(from);
+			if (log.hasLeft(i)) continue;
+			int b = (log.getX(i)<<16) | log.getY(i);
+			Integer other = holder.put(b, p);
+			assertTrue(other==null, "at "+log.getTime(i)+" ms swimmer "+p+" moved onto ("+log.getX(i)+","+log.getY(i)+") held by "+other);
+			at.put(p, b);
+		}
+	}
+
+	//a team of one per lane on a wide deck - many swimmers are handled in the same millisecond
+	@Test
+	void manyTeamsAtOnce() throws Exception {
+		TickRace race = race("--seed=1", "--teams=60", "--teamSize=4", "--gridX=320");
+		run(race);
+		assertFalse(race.hasStalled());
+		assertEquals(60, race.getLedger().finished());
+	}
+}